@@ -19,6 +19,7 @@ plugins {
     id("com.cognifide.aem.instance.local") version gradleAemPluginVersion
     id("com.cognifide.aem.bundle") version gradleAemPluginVersion
     id("com.cognifide.aem.package") version gradleAemPluginVersion
+    id("me.champeau.gradle.jmh") version "0.5.3"
 }
 
 group = "com.mysite"
@@ -35,6 +36,12 @@ java {
 }
 
 tasks {
+    // the service user mapping in /apps/local-renditions/config refers to the bundle by this name
+    jar {
+        manifest {
+            attributes("Bundle-SymbolicName" to "com.mysite.local.tools")
+        }
+    }
     test {
         failFast = true
         useJUnitPlatform()
@@ -42,6 +49,27 @@ tasks {
     }
 }
 
+// benchmarks in src/jmh run on the test fixtures, e.g. ./gradlew jmh -Pjmh.include=ImageBenchmark
+jmh {
+    jmhVersion = "1.25"
+    includeTests = true
+    include = listOfNotNull(findProperty("jmh.include") as String?)
+    benchmarkMode = listOf("thrpt")
+    profilers = listOf("gc")
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    resultFormat = "JSON"
+}
+
+// replays a synthetic DAM through the workflow process, e.g. ./gradlew loadTest -PloadTest.renderThreads=4
+tasks.register<JavaExec>("loadTest") {
+    description = "Replays a synthetic DAM ingest through the rendition workflow process."
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("com.mysite.local.tools.workflow.LoadTest")
+    systemProperties(project.properties.filterKeys { it.startsWith("loadTest.") })
+}
+
 dependencies {	
     compileOnly("org.projectlombok:lombok:1.18.12")
     annotationProcessor("org.projectlombok:lombok:1.18.12")
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import io.wcm.testing.mock.aem.context.AemContextImpl;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+
+/**
+ * AEM mock context managed by JMH state lifecycle instead of the JUnit extension.
+ */
+class BenchmarkAemContext extends AemContextImpl {
+
+  void start() {
+    start(ResourceResolverType.RESOURCERESOLVER_MOCK);
+    load().json("/contentSamples/processingProfiles.json", "/conf/global/settings/dam/processing");
+    load().json("/contentSamples/dam.json", "/content");
+  }
+
+  /**
+   * Starts the context without the test fixtures.
+   */
+  void start(ResourceResolverType resourceResolverType) {
+    setResourceResolverType(resourceResolverType);
+    setUp();
+    addModelsForClasses(ProcessingProfile.Rendition.class);
+  }
+
+  void stop() {
+    tearDown();
+  }
+}
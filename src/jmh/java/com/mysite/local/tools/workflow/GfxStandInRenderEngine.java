@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mysite.local.tools.workflow;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.imageio.ImageIO;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.ResourceResolver;
+
+/**
+ * Stands in for Gfx, which is not available outside AEM. It reads the source header and returns a blank image of the
+ * rendition size, encoded once per size and format, so the load test measures the pipeline around rendering. The
+ * {@code java} engine renders for real.
+ */
+class GfxStandInRenderEngine implements RenderEngine {
+
+  private final Map<String, byte[]> encoded = new ConcurrentHashMap<>();
+
+  @Override
+  public String getName() {
+    return GfxRenderEngine.NAME;
+  }
+
+  @Override
+  public InputStream render(String sourcePath, RenditionSpec spec, ResourceResolver resourceResolver) {
+    Optional<Dimension> sourceSize = Optional.ofNullable(resourceResolver.getResource(sourcePath))
+        .flatMap(WorkflowUtil::getSourceRendition)
+        .flatMap(WorkflowUtil::getRenditionSize);
+    if (sourceSize.isEmpty()) {
+      return null;
+    }
+    Dimension targetSize = JavaRenderEngine.getTargetSize(sourceSize.get(), spec.getWid(), spec.getHei());
+    String format = StringUtils.substringAfter(spec.getMimeType(), "/");
+    byte[] image = encoded.computeIfAbsent(format + ":" + targetSize.width + "x" + targetSize.height,
+        key -> encode(targetSize, format));
+    return image != null ? new ByteArrayInputStream(image) : null;
+  }
+
+  /**
+   * Blank image of the size, {@code null} when the format cannot be written.
+   */
+  private static byte[] encode(Dimension size, String format) {
+    BufferedImage image = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_RGB);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try {
+      return ImageIO.write(image, format, output) ? output.toByteArray() : null;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
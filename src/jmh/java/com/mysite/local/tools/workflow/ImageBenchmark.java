@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.day.cq.dam.api.Rendition;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import javax.jcr.Binary;
+import javax.jcr.RepositoryException;
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Reading rendition dimensions and rendering with the Java engine, on generated originals of several formats and
+ * resolutions.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ImageBenchmark {
+
+  @Param({"jpeg", "png", "bmp"})
+  public String format;
+
+  @Param({"800x600", "3000x2000", "6000x4000"})
+  public String resolution;
+
+  private byte[] image;
+
+  private Rendition rendition;
+
+  private RenditionSpec spec;
+
+  @Setup
+  public void setUp() throws IOException, RepositoryException {
+    image = createImage(
+        Integer.parseInt(StringUtils.substringBefore(resolution, "x")),
+        Integer.parseInt(StringUtils.substringAfter(resolution, "x")),
+        format);
+    Binary binary = mock(Binary.class);
+    when(binary.getStream()).thenAnswer(invocation -> new ByteArrayInputStream(image));
+    rendition = mock(Rendition.class);
+    when(rendition.getBinary()).thenReturn(binary);
+    when(rendition.getStream()).thenAnswer(invocation -> new ByteArrayInputStream(image));
+    spec = RenditionSpec.builder()
+        .name("medium.jpeg")
+        .mimeType("image/jpeg")
+        .wid(800)
+        .hei(800)
+        .qlt(85)
+        .build();
+  }
+
+  @Benchmark
+  public Optional<Dimension> renditionSize() {
+    return WorkflowUtil.getRenditionSize(rendition);
+  }
+
+  @Benchmark
+  public Optional<Dimension> imageHeader() throws IOException {
+    return WorkflowUtil.readImageSize(new ByteArrayInputStream(image));
+  }
+
+  @Benchmark
+  public byte[] javaEngineRender() throws IOException {
+    return JavaRenderEngine.render(new ByteArrayInputStream(image), spec);
+  }
+
+  /**
+   * Gradient, so that the encoded images are not trivially compressible.
+   */
+  static byte[] createImage(int width, int height, String format) throws IOException {
+    BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = bufferedImage.createGraphics();
+    try {
+      graphics.setPaint(new GradientPaint(0, 0, Color.ORANGE, width, height, Color.BLUE));
+      graphics.fillRect(0, 0, width, height);
+    } finally {
+      graphics.dispose();
+    }
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ImageIO.write(bufferedImage, format, output);
+    return output.toByteArray();
+  }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mysite.local.tools.workflow;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import com.adobe.granite.workflow.WorkflowSession;
+import com.adobe.granite.workflow.exec.WorkItem;
+import com.adobe.granite.workflow.exec.WorkflowData;
+import com.adobe.granite.workflow.metadata.MetaDataMap;
+import com.day.cq.dam.api.Asset;
+import com.day.cq.dam.api.renditions.RenditionMaker;
+import com.day.cq.dam.api.renditions.RenditionTemplate;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.TabularData;
+import lombok.RequiredArgsConstructor;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+
+/**
+ * Replays the ingest of a synthetic DAM through {@link LocalRenditionMakerProcess} on AEM mocks and reports throughput,
+ * asset latency percentiles, allocations and JCR commits. Gfx is replaced by {@link GfxStandInRenderEngine} and the
+ * {@link RenditionMaker} only applies the templates. The mock repository keeps everything in memory, so repository
+ * latency and contention are not part of the results. The JCR mock has no concurrency control, so the assets are
+ * written by a single workflow thread, renders still run on the configured render threads.
+ */
+@RequiredArgsConstructor
+public class LoadTest {
+
+  private final BenchmarkAemContext context;
+
+  private final LoadTestSpec spec;
+
+  private final PrintStream out;
+
+  private LocalRenditionMakerProcess process;
+
+  private RenditionMetrics metrics;
+
+  private MetaDataMap forceArgs;
+
+  public static void main(String[] args) throws Exception {
+    BenchmarkAemContext context = new BenchmarkAemContext();
+    // JCR mock, as rendition metadata is written through the JCR API
+    context.start(ResourceResolverType.JCR_MOCK);
+    try {
+      new LoadTest(context, LoadTestSpec.fromProperties(System.getProperties()), System.out).run();
+    } finally {
+      context.stop();
+    }
+  }
+
+  void run() throws Exception {
+    out.printf(Locale.ROOT, "Generating %d assets in %d folder levels.%n", spec.getAssets(), spec.getDepth());
+    List<WorkItem> workItems = new SyntheticDam(context, spec).create().stream()
+        .map(LoadTest::newWorkItem)
+        .collect(Collectors.toList());
+    context.resourceResolver().commit();
+    registerServices();
+
+    // every run regenerates the renditions, warmed up assets are not skipped as up to date
+    forceArgs = mock(MetaDataMap.class, withSettings().stubOnly());
+    when(forceArgs.get(WorkflowUtil.PROCESS_ARGS, "")).thenReturn(WorkflowUtil.FORCE_ARG);
+
+    replay(workItems.subList(0, Math.min(spec.getWarmupAssets(), workItems.size())), new LatencyStats());
+    metrics.reset();
+
+    LatencyStats latency = new LatencyStats();
+    long start = System.nanoTime();
+    long allocated = replay(workItems, latency);
+    report(workItems.size(), System.nanoTime() - start, latency, allocated);
+  }
+
+  private void registerServices() {
+    context.registerService(MetricsService.class, MetricsService.NOOP);
+    context.registerService(JobManager.class, mock(JobManager.class));
+    context.registerService(RenditionMaker.class, newRenditionMaker());
+    context.registerService(RenderEngine.class, new GfxStandInRenderEngine());
+    context.registerInjectActivateService(new JavaRenderEngine());
+    metrics = context.registerInjectActivateService(new RenditionMetrics());
+    context.registerInjectActivateService(new ProcessingProfileRegistry());
+    context.registerInjectActivateService(new ProcessingProfileIndex());
+    context.registerInjectActivateService(new AssetCoalescer());
+    context.registerInjectActivateService(new RenditionGenerator(), Map.of(
+        "render.threads", spec.getRenderThreads(),
+        "render.engine", spec.getRenderEngine(),
+        "cascade.enabled", spec.isCascade()));
+    process = context.registerInjectActivateService(new LocalRenditionMakerProcess());
+  }
+
+  /**
+   * Executes the process for every work item on a single workflow thread with its own session. Concurrent writers
+   * would share the JCR mock without any concurrency control, so their commits would tell nothing about a repository.
+   *
+   * @return bytes allocated meanwhile by all threads, including the render threads
+   */
+  private long replay(List<WorkItem> workItems, LatencyStats latency) throws Exception {
+    ResourceResolver resourceResolver = context.resourceResolver().clone(null);
+    try {
+      WorkflowSession session = newWorkflowSession(resourceResolver);
+      // threads started meanwhile count from zero, allocations of threads ended meanwhile are lost
+      Map<Long, Long> allocatedBefore = getAllocatedBytes();
+      for (WorkItem workItem : workItems) {
+        long start = System.nanoTime();
+        process.execute(workItem, session, forceArgs);
+        latency.record(System.nanoTime() - start);
+      }
+      return getAllocatedBytes().entrySet().stream()
+          .mapToLong(entry -> entry.getValue() - allocatedBefore.getOrDefault(entry.getKey(), 0L))
+          .sum();
+    } finally {
+      resourceResolver.close();
+    }
+  }
+
+  private void report(int assets, long elapsedNanos, LatencyStats latency, long allocatedBytes)
+      throws OpenDataException {
+    TabularData stages = metrics.getStages();
+    long rendered = metrics.getRenditions().values().stream()
+        .map(CompositeData.class::cast)
+        .mapToLong(row -> (long) row.get("rendered"))
+        .sum();
+    CompositeData commits = stages.get(new Object[]{RenditionMetrics.Stage.COMMIT.getName()});
+
+    out.printf(Locale.ROOT, "%nReplayed %d assets of %d profiles on one workflow thread, %d render threads, %s engine"
+            + "%s.%n", assets, spec.getProfiles(), spec.getRenderThreads(), spec.getRenderEngine(),
+        spec.isCascade() ? ", cascade" : "");
+    out.printf(Locale.ROOT, "Throughput     %.1f assets/s, %d renditions stored in %.1f s%n",
+        assets / (elapsedNanos / 1e9), rendered, elapsedNanos / 1e9);
+    out.printf(Locale.ROOT, "Asset latency  p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+        latency.getPercentileMillis(0.5), latency.getPercentileMillis(0.95), latency.getPercentileMillis(0.99),
+        latency.getMaxMillis());
+    out.printf(Locale.ROOT, "Allocated      %.1f MB, %.2f MB per asset%n",
+        allocatedBytes / 1048576d, allocatedBytes / 1048576d / assets);
+    out.printf(Locale.ROOT, "JCR commits    %d%n%n", commits != null ? (long) commits.get("count") : 0);
+
+    out.printf(Locale.ROOT, "%-10s %8s %9s %9s %9s %9s %9s%n", "stage", "count", "mean ms", "p50 ms", "p95 ms",
+        "p99 ms", "max ms");
+    for (RenditionMetrics.Stage stage : RenditionMetrics.Stage.values()) {
+      CompositeData row = stages.get(new Object[]{stage.getName()});
+      if (row != null) {
+        out.printf(Locale.ROOT, "%-10s %8d %9.2f %9.2f %9.2f %9.2f %9.2f%n", stage.getName(), row.get("count"),
+            row.get("meanMs"), row.get("p50Ms"), row.get("p95Ms"), row.get("p99Ms"), row.get("maxMs"));
+      }
+    }
+  }
+
+  private static Map<Long, Long> getAllocatedBytes() {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long[] ids = threads.getAllThreadIds();
+    long[] bytes = threads.getThreadAllocatedBytes(ids);
+    Map<Long, Long> allocated = new HashMap<>();
+    for (int i = 0; i < ids.length; i++) {
+      if (bytes[i] >= 0) {
+        allocated.put(ids[i], bytes[i]);
+      }
+    }
+    return allocated;
+  }
+
+  /**
+   * Stores the renditions of the templates the way the DAM rendition maker does, without any other processing.
+   */
+  private static RenditionMaker newRenditionMaker() {
+    RenditionMaker renditionMaker = mock(RenditionMaker.class, withSettings().stubOnly());
+    when(renditionMaker.generateRenditions(any(Asset.class), any())).thenAnswer(invocation -> {
+      Asset asset = invocation.getArgument(0);
+      return Arrays.stream(invocation.getArguments(), 1, invocation.getArguments().length)
+          .map(template -> ((RenditionTemplate) template).apply(asset))
+          .collect(Collectors.toList());
+    });
+    return renditionMaker;
+  }
+
+  private static WorkItem newWorkItem(String assetPath) {
+    WorkflowData workflowData = mock(WorkflowData.class, withSettings().stubOnly());
+    when(workflowData.getPayload()).thenReturn(assetPath);
+    WorkItem workItem = mock(WorkItem.class, withSettings().stubOnly());
+    when(workItem.getWorkflowData()).thenReturn(workflowData);
+    return workItem;
+  }
+
+  private static WorkflowSession newWorkflowSession(ResourceResolver resourceResolver) {
+    WorkflowSession session = mock(WorkflowSession.class, withSettings().stubOnly());
+    when(session.adaptTo(ResourceResolver.class)).thenReturn(resourceResolver);
+    return session;
+  }
+}
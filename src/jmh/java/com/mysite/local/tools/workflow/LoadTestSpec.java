@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mysite.local.tools.workflow;
+
+import java.awt.Dimension;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import lombok.Builder;
+import lombok.Value;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Shape of the synthetic DAM and of the load replayed through the workflow process, read from {@code loadTest.*}
+ * system properties, e.g. {@code ./gradlew loadTest -PloadTest.depth=3 -PloadTest.renderThreads=4}.
+ */
+@Value
+@Builder
+class LoadTestSpec {
+
+  static final String PREFIX = "loadTest.";
+
+  /**
+   * Levels of folders below the root of the synthetic DAM, assets are stored in the folders of the deepest level.
+   */
+  int depth;
+
+  int foldersPerLevel;
+
+  int assetsPerFolder;
+
+  /**
+   * Sizes of the originals, each one picked with the probability of its weight.
+   */
+  List<WeightedSize> sizes;
+
+  String format;
+
+  int profiles;
+
+  /**
+   * Folder levels a Processing Profile is assigned to, 0 being the root, so assets inherit one profile per level.
+   */
+  List<Integer> profileLevels;
+
+  /**
+   * Longer side of the renditions of every profile.
+   */
+  List<Integer> renditions;
+
+  int renderThreads;
+
+  String renderEngine;
+
+  boolean cascade;
+
+  /**
+   * Assets processed before measuring, picked from the replayed ones.
+   */
+  int warmupAssets;
+
+  long seed;
+
+  int getAssets() {
+    return (int) Math.pow(foldersPerLevel, depth) * assetsPerFolder;
+  }
+
+  static LoadTestSpec fromProperties(Properties properties) {
+    return LoadTestSpec.builder()
+        .depth(getInt(properties, "depth", 2))
+        .foldersPerLevel(getInt(properties, "foldersPerLevel", 4))
+        .assetsPerFolder(getInt(properties, "assetsPerFolder", 25))
+        .sizes(Arrays.stream(StringUtils.split(get(properties, "sizes", "1920x1080:6,4000x3000:3,8000x6000:1"), ','))
+            .map(WeightedSize::parse)
+            .collect(Collectors.toList()))
+        .format(get(properties, "format", "jpeg"))
+        .profiles(getInt(properties, "profiles", 3))
+        .profileLevels(getInts(properties, "profileLevels", "0,1"))
+        .renditions(getInts(properties, "renditions", "2048,1280,800,319,140"))
+        .renderThreads(getInt(properties, "renderThreads", 1))
+        .renderEngine(get(properties, "renderEngine", GfxRenderEngine.NAME))
+        .cascade(Boolean.parseBoolean(get(properties, "cascade", "false")))
+        .warmupAssets(getInt(properties, "warmupAssets", 20))
+        .seed(Long.parseLong(get(properties, "seed", "42")))
+        .build();
+  }
+
+  private static String get(Properties properties, String name, String defaultValue) {
+    return StringUtils.defaultIfBlank(properties.getProperty(PREFIX + name), defaultValue);
+  }
+
+  private static int getInt(Properties properties, String name, int defaultValue) {
+    return Integer.parseInt(get(properties, name, String.valueOf(defaultValue)));
+  }
+
+  private static List<Integer> getInts(Properties properties, String name, String defaultValue) {
+    return Arrays.stream(StringUtils.split(get(properties, name, defaultValue), ','))
+        .map(StringUtils::trim)
+        .map(Integer::valueOf)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Size of originals with its weight in the distribution, parsed from {@code 4000x3000:3}.
+   */
+  @Value
+  static class WeightedSize {
+
+    Dimension size;
+
+    int weight;
+
+    static WeightedSize parse(String value) {
+      String size = StringUtils.substringBefore(StringUtils.trim(value), ":");
+      return new WeightedSize(
+          new Dimension(Integer.parseInt(StringUtils.substringBefore(size, "x")),
+              Integer.parseInt(StringUtils.substringAfter(size, "x"))),
+          Integer.parseInt(StringUtils.defaultIfEmpty(StringUtils.substringAfter(value, ":"), "1")));
+    }
+  }
+}
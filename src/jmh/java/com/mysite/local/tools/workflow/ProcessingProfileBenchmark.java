@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.apache.sling.api.resource.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Per asset overhead of finding and reading the Processing Profiles, uncached and cached.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ProcessingProfileBenchmark {
+
+  private static final String ASSET_PATH = "/content/dam/test/test2/test3/43.png";
+
+  private static final String PROFILE_PATH = "/conf/global/settings/dam/processing/profile-from-repo";
+
+  private BenchmarkAemContext context;
+
+  private Resource asset;
+
+  private Resource profile;
+
+  private ProcessingProfileIndex index;
+
+  private ProcessingProfileRegistry registry;
+
+  @Setup
+  public void setUp() {
+    context = new BenchmarkAemContext();
+    context.start();
+    asset = context.resourceResolver().getResource(ASSET_PATH);
+    profile = context.resourceResolver().getResource(PROFILE_PATH);
+    index = context.registerInjectActivateService(new ProcessingProfileIndex());
+    registry = context.registerInjectActivateService(new ProcessingProfileRegistry());
+  }
+
+  @TearDown
+  public void tearDown() {
+    context.stop();
+  }
+
+  @Benchmark
+  public Set<String> profilePathsFromTree() {
+    return ProcessingProfilesUtil.getProcessingProfilePathsToApply(asset);
+  }
+
+  @Benchmark
+  public Set<String> profilePathsFromIndex() {
+    return index.getProcessingProfilePathsToApply(asset);
+  }
+
+  @Benchmark
+  public ProcessingProfile profileFromResource() {
+    return ProcessingProfile.fromResource(profile);
+  }
+
+  @Benchmark
+  public List<RenditionSpec> renditionSpecsCompiled() {
+    ProcessingProfile processingProfile = ProcessingProfile.fromResource(profile);
+    return processingProfile.getRenditions().stream()
+        .map(rendition -> RenditionSpec.compile(processingProfile, rendition, name -> "image/jpeg"))
+        .collect(Collectors.toList());
+  }
+
+  @Benchmark
+  public List<RenditionSpec> renditionSpecsFromRegistry() {
+    return registry.getRenditionSpecs(PROFILE_PATH, context.resourceResolver());
+  }
+}
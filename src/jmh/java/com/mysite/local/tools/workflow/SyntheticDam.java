@@ -0,0 +1,143 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mysite.local.tools.workflow;
+
+import com.day.cq.dam.api.DamConstants;
+import com.day.crx.JcrConstants;
+import io.wcm.testing.mock.aem.context.AemContextImpl;
+import java.awt.Dimension;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Generates Processing Profiles and a tree of DAM folders with assets as described by the {@link LoadTestSpec}.
+ * Originals of the same size share the encoded image, so that generating a large DAM takes little time.
+ */
+@RequiredArgsConstructor
+class SyntheticDam {
+
+  static final String ROOT = ProcessingProfilesUtil.DAM_ROOT + "/load";
+
+  static final String PROFILES_ROOT = "/conf/global/settings/dam/processing";
+
+  private final AemContextImpl context;
+
+  private final LoadTestSpec spec;
+
+  private final Map<Dimension, byte[]> originals = new HashMap<>();
+
+  private Random random;
+
+  private int assignedProfiles;
+
+  /**
+   * Creates the profiles and the folders with their assets.
+   *
+   * @return paths of the created assets, in the order they were created
+   */
+  List<String> create() {
+    random = new Random(spec.getSeed());
+    for (int i = 0; i < spec.getProfiles(); i++) {
+      createProfile(i);
+    }
+    List<String> assets = new ArrayList<>();
+    createFolder(ROOT, 0, assets);
+    return assets;
+  }
+
+  private void createProfile(int index) {
+    String profilePath = getProfilePath(index);
+    context.create().resource(profilePath, JcrConstants.JCR_PRIMARYTYPE, "cq:Page");
+    context.create().resource(profilePath + "/" + JcrConstants.JCR_CONTENT,
+        JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED,
+        "jcr:title", "Load " + index,
+        "sling:resourceType", "dam/processing/profile");
+    for (int size : spec.getRenditions()) {
+      // the same sizes in every profile, so overlapping profiles render them once
+      String name = "load-" + index + "-" + size + ".jpeg";
+      String renditionPath = profilePath + "/" + size;
+      context.create().resource(renditionPath, JcrConstants.JCR_PRIMARYTYPE, "cq:Page");
+      context.create().resource(renditionPath + "/" + JcrConstants.JCR_CONTENT,
+          JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED,
+          "jcr:title", name,
+          "includeMimeTypes", "image/.*",
+          "excludeMimeTypes", "",
+          "fmt", "jpeg",
+          "wid", (long) size,
+          "hei", (long) size,
+          "qlt", 85L,
+          "name", name,
+          "sling:resourceType", "dam/processing/profile/rendition");
+    }
+  }
+
+  private void createFolder(String path, int level, List<String> assets) {
+    context.create().resource(path, JcrConstants.JCR_PRIMARYTYPE, "sling:Folder");
+    if (spec.getProfileLevels().contains(level)) {
+      context.create().resource(path + "/" + JcrConstants.JCR_CONTENT,
+          JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED,
+          ProcessingProfilesUtil.PROCESSING_PROFILE, getProfilePath(assignedProfiles++ % spec.getProfiles()));
+    }
+    if (level < spec.getDepth()) {
+      for (int i = 0; i < spec.getFoldersPerLevel(); i++) {
+        createFolder(path + "/folder-" + i, level + 1, assets);
+      }
+      return;
+    }
+    for (int i = 0; i < spec.getAssetsPerFolder(); i++) {
+      String assetPath = path + "/asset-" + i + "." + spec.getFormat();
+      Dimension size = pickSize();
+      context.create().asset(assetPath, new ByteArrayInputStream(getOriginal(size)), "image/" + spec.getFormat(),
+          Map.of(DamConstants.TIFF_IMAGEWIDTH, (long) size.width, DamConstants.TIFF_IMAGELENGTH, (long) size.height));
+      assets.add(assetPath);
+    }
+  }
+
+  private Dimension pickSize() {
+    int total = spec.getSizes().stream().mapToInt(LoadTestSpec.WeightedSize::getWeight).sum();
+    int pick = random.nextInt(total);
+    for (LoadTestSpec.WeightedSize size : spec.getSizes()) {
+      pick -= size.getWeight();
+      if (pick < 0) {
+        return size.getSize();
+      }
+    }
+    throw new IllegalStateException("No size to pick from.");
+  }
+
+  private byte[] getOriginal(Dimension size) {
+    return originals.computeIfAbsent(size, key -> {
+      try {
+        return ImageBenchmark.createImage(key.width, key.height, spec.getFormat());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+  }
+
+  private static String getProfilePath(int index) {
+    return PROFILES_ROOT + "/load-" + index;
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Keeps a single rendition run per asset path. A trigger arriving while a run for the asset is in flight does not
+ * start a second, racing one, it is collapsed into one follow-up run of the in-flight caller instead. Every run waits
+ * for the debounce window first, so a burst of triggers ends up in the same run.
+ */
+@Slf4j
+@Component(
+    service = AssetCoalescer.class,
+    property = {
+        Constants.SERVICE_DESCRIPTION + "=Coalesces rendition runs of the same asset",
+        Constants.SERVICE_VENDOR + "=Cognifide"})
+@Designate(ocd = AssetCoalescer.Config.class)
+public class AssetCoalescer {
+
+  private final Map<String, Run> runs = new ConcurrentHashMap<>();
+
+  private long debounceMillis;
+
+  @Activate
+  @Modified
+  void activate(Config config) {
+    this.debounceMillis = Math.max(0, config.debounce_millis());
+  }
+
+  /**
+   * Runs the task for the asset, repeating it while triggers arrive during a run.
+   *
+   * @param task run with {@code true} when any of the coalesced triggers forces the renditions
+   * @return {@code false} when the trigger was collapsed into the in-flight run of the asset
+   */
+  boolean run(String assetPath, boolean force, Consumer<Boolean> task) {
+    Run run = new Run(force);
+    while (true) {
+      Run inFlight = runs.putIfAbsent(assetPath, run);
+      if (inFlight == null) {
+        break;
+      }
+      if (inFlight.attach(force)) {
+        log.debug("Renditions of {} are being generated, trigger collapsed into a follow-up run.", assetPath);
+        return false;
+      }
+      // the in-flight run has just finished
+      runs.remove(assetPath, inFlight);
+    }
+
+    try {
+      while (debounce()) {
+        Boolean runForced = run.takePending();
+        if (runForced == null) {
+          break;
+        }
+        task.accept(runForced);
+      }
+    } finally {
+      run.finish();
+      runs.remove(assetPath, run);
+    }
+    return true;
+  }
+
+  private boolean debounce() {
+    if (debounceMillis == 0) {
+      return true;
+    }
+    try {
+      TimeUnit.MILLISECONDS.sleep(debounceMillis);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  @ObjectClassDefinition(name = "Local Renditions Asset Coalescer",
+      description = "Collapses repeated triggers of the same asset into a single follow-up run.")
+  public @interface Config {
+
+    @AttributeDefinition(name = "Debounce (ms)",
+        description = "Time a run waits before it starts, triggers of the asset arriving meanwhile are collapsed "
+            + "into it. The waiting thread is blocked, 0 starts immediately.")
+    long debounce_millis() default 0;
+  }
+
+  /**
+   * Pending trigger of a run, guarded by the run itself.
+   */
+  private static class Run {
+
+    private boolean pending = true;
+
+    private boolean force;
+
+    private boolean finished;
+
+    Run(boolean force) {
+      this.force = force;
+    }
+
+    synchronized boolean attach(boolean force) {
+      if (finished) {
+        return false;
+      }
+      this.pending = true;
+      this.force |= force;
+      return true;
+    }
+
+    /**
+     * Force flag of the pending trigger, {@code null} after finishing the run when there is none.
+     */
+    synchronized Boolean takePending() {
+      if (!pending) {
+        finished = true;
+        return null;
+      }
+      boolean pendingForce = force;
+      pending = false;
+      force = false;
+      return pendingForce;
+    }
+
+    synchronized void finish() {
+      finished = true;
+    }
+  }
+}
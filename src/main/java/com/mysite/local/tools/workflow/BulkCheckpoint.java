@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import com.day.crx.JcrConstants;
+import java.util.Map;
+import java.util.Optional;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.api.resource.ValueMap;
+
+/**
+ * Progress of a bulk reprocessing run of a folder, stored in the repository so that an interrupted run continues
+ * after the last asset it has committed. Changes are persisted together with the renditions of the batch.
+ */
+@RequiredArgsConstructor
+class BulkCheckpoint {
+
+  static final String CHECKPOINTS_ROOT = "/var/local-renditions/bulk";
+
+  static final String FOLDER = "folder";
+
+  static final String LAST_PATH = "lastPath";
+
+  static final String PROCESSED = "processed";
+
+  private final ResourceResolver resourceResolver;
+
+  @Getter
+  private final String folderPath;
+
+  /**
+   * Path of the last committed asset, {@code null} when the run starts from the beginning.
+   */
+  String getLastPath() {
+    return getValueMap().map(valueMap -> valueMap.get(LAST_PATH, String.class)).orElse(null);
+  }
+
+  long getProcessed() {
+    return getValueMap().map(valueMap -> valueMap.get(PROCESSED, 0L)).orElse(0L);
+  }
+
+  void update(String lastPath, long processed) throws PersistenceException {
+    Resource checkpoint = ResourceUtil.getOrCreateResource(resourceResolver, getPath(),
+        Map.of(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED, FOLDER, folderPath),
+        "sling:Folder", false);
+    ModifiableValueMap valueMap = checkpoint.adaptTo(ModifiableValueMap.class);
+    if (valueMap != null) {
+      valueMap.put(LAST_PATH, lastPath);
+      valueMap.put(PROCESSED, processed);
+    }
+  }
+
+  void remove() throws PersistenceException {
+    Resource checkpoint = resourceResolver.getResource(getPath());
+    if (checkpoint != null) {
+      resourceResolver.delete(checkpoint);
+    }
+  }
+
+  private Optional<ValueMap> getValueMap() {
+    return Optional.ofNullable(resourceResolver.getResource(getPath())).map(Resource::getValueMap);
+  }
+
+  private String getPath() {
+    return CHECKPOINTS_ROOT + "/" + DigestUtils.sha1Hex(folderPath);
+  }
+}
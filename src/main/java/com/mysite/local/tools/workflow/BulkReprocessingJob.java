@@ -0,0 +1,165 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.consumer.JobExecutionContext;
+import org.apache.sling.event.jobs.consumer.JobExecutionResult;
+import org.apache.sling.event.jobs.consumer.JobExecutor;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Generates renditions of all assets below a DAM folder without starting a workflow per asset. Assets are committed in
+ * batches together with a checkpoint, so a stopped run resumes after the last committed asset when the job is
+ * retried.
+ */
+@Slf4j
+@Component(
+    service = JobExecutor.class,
+    property = {
+        Constants.SERVICE_DESCRIPTION + "=Bulk reprocessing of local renditions",
+        Constants.SERVICE_VENDOR + "=Cognifide",
+        JobExecutor.PROPERTY_TOPICS + "=" + BulkReprocessingJob.TOPIC})
+@Designate(ocd = BulkReprocessingJob.Config.class)
+public class BulkReprocessingJob implements JobExecutor {
+
+  static final String TOPIC = "com/mysite/local/tools/renditions/bulk";
+
+  static final String PROPERTY_PATH = "path";
+
+  static final String PROPERTY_FORCE = "force";
+
+  @Reference
+  private ResourceResolverFactory resourceResolverFactory;
+
+  @Reference
+  private RenditionGenerator renditionGenerator;
+
+  private Config config;
+
+  @Activate
+  @Modified
+  void activate(Config config) {
+    this.config = config;
+  }
+
+  @Override
+  public JobExecutionResult process(Job job, JobExecutionContext context) {
+    String folderPath = job.getProperty(PROPERTY_PATH, String.class);
+    boolean force = job.getProperty(PROPERTY_FORCE, Boolean.FALSE);
+
+    try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(
+        Map.of(ResourceResolverFactory.SUBSERVICE, RenditionGenerator.SUBSERVICE))) {
+      Resource folder = resourceResolver.getResource(folderPath);
+      if (folder == null) {
+        return context.result().message("Folder " + folderPath + " does not exist.").cancelled();
+      }
+      return reprocess(folder, force, context);
+    } catch (LoginException e) {
+      log.error("Could not obtain the {} service resource resolver.", RenditionGenerator.SUBSERVICE, e);
+      return context.result().message("Service user is not available.").cancelled();
+    } catch (PersistenceException e) {
+      log.error("Could not store the checkpoint of {}.", folderPath, e);
+      return context.result().message(e.getMessage()).failed();
+    }
+  }
+
+  private JobExecutionResult reprocess(Resource folder, boolean force, JobExecutionContext context)
+      throws PersistenceException {
+    ResourceResolver resourceResolver = folder.getResourceResolver();
+    BulkCheckpoint checkpoint = new BulkCheckpoint(resourceResolver, folder.getPath());
+    String resumeAfter = checkpoint.getLastPath();
+    long processed = checkpoint.getProcessed();
+    if (resumeAfter != null) {
+      context.log("Resuming after {0}, {1} assets already processed.", resumeAfter, processed);
+    }
+
+    int batchSize = Math.max(1, config.batchSize());
+    RenditionWriteBatch writeBatch = renditionGenerator.newWriteBatch(resourceResolver, batchSize);
+    long minIntervalNanos = config.maxAssetsPerSecond() > 0
+        ? TimeUnit.SECONDS.toNanos(1) / config.maxAssetsPerSecond()
+        : 0;
+    long lastStart = 0;
+    Iterator<Resource> assets = new DamAssetsIterator(folder, resumeAfter);
+    while (assets.hasNext()) {
+      if (context.isStopped()) {
+        writeBatch.commit();
+        return context.result().message("Stopped after " + processed + " assets.").failed();
+      }
+      lastStart = throttle(lastStart, minIntervalNanos);
+      Resource asset = assets.next();
+      renditionGenerator.generateRenditions(asset, writeBatch, force);
+      processed++;
+      // stored with the same commit as the renditions of the batch
+      checkpoint.update(asset.getPath(), processed);
+      writeBatch.assetDone();
+      if (processed % batchSize == 0) {
+        context.log("{0} assets processed, last {1}.", processed, asset.getPath());
+      }
+    }
+    checkpoint.remove();
+    writeBatch.commit();
+    log.info("Bulk reprocessing of {} finished, {} assets processed.", folder.getPath(), processed);
+    return context.result().message(processed + " assets processed.").succeeded();
+  }
+
+  /**
+   * Waits until the minimal interval since the previous asset has passed and returns the new start time.
+   */
+  private static long throttle(long lastStart, long minIntervalNanos) {
+    long now = System.nanoTime();
+    long wait = lastStart + minIntervalNanos - now;
+    if (lastStart > 0 && wait > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(wait);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return System.nanoTime();
+    }
+    return now;
+  }
+
+  @ObjectClassDefinition(name = "Local Renditions Bulk Reprocessing",
+      description = "Generates renditions of all assets below a DAM folder.")
+  public @interface Config {
+
+    @AttributeDefinition(name = "Batch size",
+        description = "Number of assets committed together, the run resumes after the last committed batch.")
+    int batchSize() default 50;
+
+    @AttributeDefinition(name = "Maximal assets per second",
+        description = "Rate limit of processed assets, 0 disables the limit.")
+    int maxAssetsPerSecond() default 0;
+  }
+}
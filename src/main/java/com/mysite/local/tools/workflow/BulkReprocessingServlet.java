@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import com.day.crx.JcrConstants;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.security.AccessControlManager;
+import javax.jcr.security.Privilege;
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.servlets.SlingAllMethodsServlet;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.jcr.resource.api.JcrResourceConstants;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+/**
+ * Starts bulk reprocessing of a DAM folder, e.g.
+ * {@code curl -u admin:admin -F path=/content/dam/folder -F force=true http://localhost:4502/bin/local-renditions/reprocess}.
+ * The job writes with the service user, so the requesting user needs write access to the folder.
+ */
+@Slf4j
+@Component(
+    service = Servlet.class,
+    property = {
+        Constants.SERVICE_DESCRIPTION + "=Starts bulk reprocessing of local renditions",
+        Constants.SERVICE_VENDOR + "=Cognifide",
+        "sling.servlet.paths=/bin/local-renditions/reprocess",
+        "sling.servlet.methods=POST"})
+public class BulkReprocessingServlet extends SlingAllMethodsServlet {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final List<String> FOLDER_TYPES = List.of(JcrConstants.NT_FOLDER,
+      JcrResourceConstants.NT_SLING_FOLDER, JcrResourceConstants.NT_SLING_ORDERED_FOLDER);
+
+  @Reference
+  private transient JobManager jobManager;
+
+  @Override
+  protected void doPost(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+    String path = StringUtils.removeEnd(request.getParameter(BulkReprocessingJob.PROPERTY_PATH), "/");
+    response.setContentType("text/plain");
+    response.setCharacterEncoding("UTF-8");
+
+    ResourceResolver resourceResolver = request.getResourceResolver();
+    Resource folder = StringUtils.startsWith(path, ProcessingProfilesUtil.DAM_ROOT)
+        ? resourceResolver.getResource(path)
+        : null;
+    if (folder == null || !isFolder(folder)) {
+      response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+      response.getWriter().println("Parameter path has to point to an existing folder below "
+          + ProcessingProfilesUtil.DAM_ROOT);
+      return;
+    }
+    if (!canWrite(resourceResolver, path)) {
+      response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+      response.getWriter().println("Reprocessing " + path + " requires write access to it.");
+      return;
+    }
+
+    boolean force = Boolean.parseBoolean(request.getParameter(BulkReprocessingJob.PROPERTY_FORCE));
+    Job job = jobManager.addJob(BulkReprocessingJob.TOPIC,
+        Map.of(BulkReprocessingJob.PROPERTY_PATH, path, BulkReprocessingJob.PROPERTY_FORCE, force));
+    if (job == null) {
+      response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      response.getWriter().println("Could not start reprocessing of " + path);
+      return;
+    }
+    log.info("Bulk reprocessing of {} started as job {}.", path, job.getId());
+    response.getWriter().println("Reprocessing of " + path + " started as job " + job.getId());
+  }
+
+  private static boolean isFolder(Resource resource) {
+    return FOLDER_TYPES.stream().anyMatch(resource::isResourceType);
+  }
+
+  /**
+   * Whether the user of the request holds {@code jcr:write} on the path.
+   */
+  private static boolean canWrite(ResourceResolver resourceResolver, String path) {
+    Session session = resourceResolver.adaptTo(Session.class);
+    if (session == null) {
+      return false;
+    }
+    try {
+      AccessControlManager accessControlManager = session.getAccessControlManager();
+      return accessControlManager.hasPrivileges(path,
+          new Privilege[]{accessControlManager.privilegeFromName(Privilege.JCR_WRITE)});
+    } catch (RepositoryException e) {
+      log.warn("Could not check the privileges of {} on {}.", session.getUserID(), path, e);
+      return false;
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import com.day.cq.dam.api.DamConstants;
+import com.day.crx.JcrConstants;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.Resource;
+
+/**
+ * Streams assets below a folder depth first, with the children of every folder ordered by name, so that the order is
+ * stable between runs and a run can be resumed after the last processed asset. Only the children of the folders on
+ * the current path are held in memory.
+ */
+class DamAssetsIterator implements Iterator<Resource> {
+
+  private final Deque<Iterator<Resource>> folders = new ArrayDeque<>();
+
+  /**
+   * Path of the last asset already processed, {@code null} to start from the beginning.
+   */
+  private final String resumeAfter;
+
+  private Resource nextAsset;
+
+  DamAssetsIterator(Resource folder, String resumeAfter) {
+    this.resumeAfter = resumeAfter;
+    folders.push(getSortedChildren(folder));
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (nextAsset == null) {
+      nextAsset = advance();
+    }
+    return nextAsset != null;
+  }
+
+  @Override
+  public Resource next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Resource asset = nextAsset;
+    nextAsset = null;
+    return asset;
+  }
+
+  Stream<Resource> toStream() {
+    return StreamSupport.stream(
+        Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL),
+        false
+    );
+  }
+
+  private Resource advance() {
+    while (!folders.isEmpty()) {
+      Iterator<Resource> children = folders.peek();
+      if (!children.hasNext()) {
+        folders.pop();
+        continue;
+      }
+      Resource child = children.next();
+      boolean afterResumePoint = resumeAfter == null || comparePaths(child.getPath(), resumeAfter) > 0;
+      if (child.isResourceType(DamConstants.NT_DAM_ASSET)) {
+        if (afterResumePoint) {
+          return child;
+        }
+      } else if (afterResumePoint || StringUtils.startsWith(resumeAfter, child.getPath() + "/")) {
+        folders.push(getSortedChildren(child));
+      }
+    }
+    return null;
+  }
+
+  private static Iterator<Resource> getSortedChildren(Resource folder) {
+    return StreamSupport.stream(folder.getChildren().spliterator(), false)
+        .filter(child -> !JcrConstants.JCR_CONTENT.equals(child.getName()))
+        .sorted(Comparator.comparing(Resource::getName))
+        .iterator();
+  }
+
+  /**
+   * Compares paths segment by segment, which is the order the assets are streamed in.
+   */
+  static int comparePaths(String path, String otherPath) {
+    String[] segments = StringUtils.split(path, '/');
+    String[] otherSegments = StringUtils.split(otherPath, '/');
+    for (int i = 0; i < Math.min(segments.length, otherSegments.length); i++) {
+      int result = segments[i].compareTo(otherSegments[i]);
+      if (result != 0) {
+        return result;
+      }
+    }
+    return Integer.compare(segments.length, otherSegments.length);
+  }
+}
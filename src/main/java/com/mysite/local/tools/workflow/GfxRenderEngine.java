@@ -0,0 +1,74 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import com.adobe.cq.gfx.Gfx;
+import com.adobe.cq.gfx.Instructions;
+import com.adobe.cq.gfx.Plan;
+import java.io.InputStream;
+import java.util.Optional;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+/**
+ * Renders renditions with the AEM Gfx service, which is what AEM as a Cloud Service uses as well. The alpha variant
+ * of the format is requested unless the source is known to be opaque, so opaque sources are not encoded with one and
+ * the transparency of sources with an unreadable header is kept.
+ */
+@Component(
+    service = RenderEngine.class,
+    property = {
+        Constants.SERVICE_DESCRIPTION + "=Gfx render engine of local renditions",
+        Constants.SERVICE_VENDOR + "=Cognifide"})
+public class GfxRenderEngine implements RenderEngine {
+
+  static final String NAME = "gfx";
+
+  @Reference
+  private Gfx gfx;
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public InputStream render(String sourcePath, RenditionSpec spec, ResourceResolver resourceResolver) {
+    Plan plan = gfx.createPlan();
+    plan.layer(0).set("src", sourcePath);
+    Instructions instructions = plan.view();
+    spec.getInstructions().forEach(instructions::set);
+    if (spec.getOutputFormat().filter(OutputFormat::isAlphaCapable).isPresent()
+        && !isOpaque(sourcePath, resourceResolver)) {
+      instructions.set("fmt", spec.getInstructions().get("fmt") + "-alpha");
+    }
+    return gfx.render(plan, resourceResolver);
+  }
+
+  /**
+   * Whether the header of the source was read and has no alpha channel.
+   */
+  private static boolean isOpaque(String sourcePath, ResourceResolver resourceResolver) {
+    return Optional.ofNullable(resourceResolver.getResource(sourcePath))
+        .flatMap(WorkflowUtil::getSourceRendition)
+        .flatMap(WorkflowUtil::hasAlpha)
+        .map(alpha -> !alpha)
+        .orElse(false);
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import java.awt.Dimension;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Optional;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Passes the rendered image through while keeping a copy of its first bytes, so the dimensions can be read from the
+ * header once the rendition is stored, instead of reading the stored binary again.
+ */
+@Slf4j
+class ImageHeaderCapturingInputStream extends FilterInputStream {
+
+  static final int DEFAULT_HEADER_LIMIT = 64 * 1024;
+
+  private final byte[] header;
+
+  private int captured;
+
+  ImageHeaderCapturingInputStream(InputStream in) {
+    this(in, DEFAULT_HEADER_LIMIT);
+  }
+
+  ImageHeaderCapturingInputStream(InputStream in, int headerLimit) {
+    super(in);
+    this.header = new byte[headerLimit];
+  }
+
+  @Override
+  public int read() throws IOException {
+    int value = super.read();
+    if (value >= 0 && captured < header.length) {
+      header[captured++] = (byte) value;
+    }
+    return value;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    int count = super.read(buffer, offset, length);
+    if (count > 0 && captured < header.length) {
+      int toCapture = Math.min(count, header.length - captured);
+      System.arraycopy(buffer, offset, header, captured, toCapture);
+      captured += toCapture;
+    }
+    return count;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    // skipped bytes have to be read, otherwise the captured header would have a gap
+    byte[] buffer = new byte[(int) Math.min(n, 8192)];
+    int count = read(buffer, 0, buffer.length);
+    return Math.max(count, 0);
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  /**
+   * Dimensions of the image read from the captured header, empty if the header did not fit in the captured bytes.
+   */
+  Optional<Dimension> getDimension() {
+    try {
+      return WorkflowUtil.readImageSize(new ByteArrayInputStream(Arrays.copyOf(header, captured)));
+    } catch (IOException e) {
+      log.debug("Image header does not fit in the first {} bytes of the rendition.", captured, e);
+      return Optional.empty();
+    }
+  }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import com.day.cq.dam.api.Rendition;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Component;
+
+/**
+ * Renders renditions with Java Image I/O. The source is decoded subsampled to at least twice the rendition size, so
+ * that a large original is never decoded in full, then scaled down in halving steps and encoded with the rendition
+ * quality. Renditions are fitted into their width and height without upscaling, as Gfx does with
+ * {@code fit=constrain,0}. JPEG renditions are encoded with optimized Huffman tables, WebP needs an Image I/O plugin
+ * providing its writer.
+ */
+@Slf4j
+@Component(
+    service = RenderEngine.class,
+    property = {
+        Constants.SERVICE_DESCRIPTION + "=Java render engine of local renditions",
+        Constants.SERVICE_VENDOR + "=Cognifide"})
+public class JavaRenderEngine implements RenderEngine {
+
+  static final String NAME = "java";
+
+  /**
+   * Colors a palette is picked from, the image reduced to 4 bits per channel.
+   */
+  private static final int PALETTE_BINS = 1 << 12;
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public InputStream render(String sourcePath, RenditionSpec spec, ResourceResolver resourceResolver)
+      throws IOException {
+    Optional<Rendition> source = Optional.ofNullable(resourceResolver.getResource(sourcePath))
+        .flatMap(WorkflowUtil::getSourceRendition);
+    if (source.isEmpty()) {
+      log.error("Could not read source {} of rendition {}.", sourcePath, spec.getName());
+      return null;
+    }
+    try (InputStream stream = source.get().getStream()) {
+      byte[] rendered = stream != null ? render(stream, spec) : null;
+      return rendered != null ? new ByteArrayInputStream(rendered) : null;
+    }
+  }
+
+  /**
+   * Renders the rendition from the source image, {@code null} when the source or the rendition format is not
+   * supported.
+   */
+  static byte[] render(InputStream source, RenditionSpec spec) throws IOException {
+    BufferedImage image = decode(source, spec);
+    if (image == null) {
+      log.warn("Could not decode source of rendition {}.", spec.getName());
+      return null;
+    }
+    return encode(image, spec);
+  }
+
+  private static BufferedImage decode(InputStream source, RenditionSpec spec) throws IOException {
+    try (ImageInputStream input = ImageIO.createImageInputStream(source)) {
+      Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+      if (readers == null || !readers.hasNext()) {
+        return null;
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(input, true, true);
+        Dimension sourceSize = new Dimension(reader.getWidth(0), reader.getHeight(0));
+        Dimension targetSize = getTargetSize(sourceSize, spec.getWid(), spec.getHei());
+        ImageReadParam param = reader.getDefaultReadParam();
+        int subsampling = getSubsampling(sourceSize, targetSize);
+        if (subsampling > 1) {
+          param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        }
+        BufferedImage image = reader.read(0, param);
+        boolean alpha = spec.getOutputFormat().filter(OutputFormat::isAlphaCapable).isPresent()
+            && image.getColorModel().hasAlpha();
+        return resize(image, targetSize, alpha);
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  /**
+   * Size of the source fitted into the width and height, a width or height below 1 does not constrain it.
+   */
+  static Dimension getTargetSize(Dimension sourceSize, int width, int height) {
+    double scale = 1;
+    if (width > 0) {
+      scale = Math.min(scale, (double) width / sourceSize.width);
+    }
+    if (height > 0) {
+      scale = Math.min(scale, (double) height / sourceSize.height);
+    }
+    return new Dimension(
+        Math.max(1, (int) Math.round(sourceSize.width * scale)),
+        Math.max(1, (int) Math.round(sourceSize.height * scale)));
+  }
+
+  /**
+   * Largest subsampling that still decodes at least twice the target size, which keeps the following downscale free
+   * of aliasing.
+   */
+  static int getSubsampling(Dimension sourceSize, Dimension targetSize) {
+    return Math.max(1, Math.min(
+        sourceSize.width / (2 * targetSize.width),
+        sourceSize.height / (2 * targetSize.height)));
+  }
+
+  private static BufferedImage resize(BufferedImage image, Dimension targetSize, boolean alpha) {
+    int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+    BufferedImage current = image;
+    do {
+      int width = Math.max(targetSize.width, current.getWidth() / 2);
+      int height = Math.max(targetSize.height, current.getHeight() / 2);
+      BufferedImage scaled = new BufferedImage(width, height, type);
+      Graphics2D graphics = scaled.createGraphics();
+      try {
+        if (!alpha) {
+          graphics.setColor(Color.WHITE);
+          graphics.fillRect(0, 0, width, height);
+        }
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        graphics.drawImage(current, 0, 0, width, height, null);
+      } finally {
+        graphics.dispose();
+      }
+      current = scaled;
+    } while (current.getWidth() != targetSize.width || current.getHeight() != targetSize.height);
+    return current;
+  }
+
+  private static byte[] encode(BufferedImage image, RenditionSpec spec) throws IOException {
+    OutputFormat format = spec.getOutputFormat().orElse(null);
+    Iterator<ImageWriter> writers = ImageIO.getImageWritersByMIMEType(
+        format != null ? format.getMimeType() : StringUtils.defaultString(spec.getMimeType()));
+    if (!writers.hasNext()) {
+      log.warn("Rendition {} of mime type {} can not be rendered.", spec.getName(), spec.getMimeType());
+      return null;
+    }
+    ImageWriter writer = writers.next();
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try (ImageOutputStream imageOutput = ImageIO.createImageOutputStream(output)) {
+      writer.setOutput(imageOutput);
+      ImageWriteParam param = writer.getDefaultWriteParam();
+      configure(param, format, spec);
+      BufferedImage encoded = spec.isPalette() && !image.getColorModel().hasAlpha()
+          ? toPalette(image, RenditionSpec.getPaletteColors(spec.getQlt()))
+          : image;
+      writer.write(null, new IIOImage(encoded, null, null), param);
+    } finally {
+      writer.dispose();
+    }
+    return output.toByteArray();
+  }
+
+  /**
+   * Maps the rendition quality and encoding options to the parameters of the writer of the format.
+   */
+  private static void configure(ImageWriteParam param, OutputFormat format, RenditionSpec spec) {
+    if ((format == OutputFormat.JPEG || format == OutputFormat.WEBP) && param.canWriteCompressed()) {
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      if (param.getCompressionType() == null && param.getCompressionTypes().length > 0) {
+        param.setCompressionType(param.getCompressionTypes()[0]);
+      }
+      param.setCompressionQuality(Math.max(1, Math.min(100, spec.getQlt())) / 100f);
+    }
+    if (format == OutputFormat.JPEG) {
+      if (spec.isProgressive() && param.canWriteProgressive()) {
+        param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+      }
+      if (param instanceof JPEGImageWriteParam) {
+        ((JPEGImageWriteParam) param).setOptimizeHuffmanTables(true);
+      }
+    }
+    if (format == OutputFormat.PNG && spec.getCompressionLevel() >= 0 && param.canWriteCompressed()) {
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      // the PNG writer deflates with level 9 at quality 0 and without compression at quality 1
+      param.setCompressionQuality(1 - spec.getCompressionLevel() / 9f);
+    }
+  }
+
+  /**
+   * Reduces an opaque image to an adaptive palette of at most the given number of colors, dithered.
+   */
+  private static BufferedImage toPalette(BufferedImage image, int colors) {
+    BufferedImage indexed = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_INDEXED,
+        createPalette(image, colors));
+    Graphics2D graphics = indexed.createGraphics();
+    try {
+      graphics.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_ENABLE);
+      graphics.drawImage(image, 0, 0, null);
+    } finally {
+      graphics.dispose();
+    }
+    return indexed;
+  }
+
+  /**
+   * Palette of the most frequent colors of the image, each one the mean of the pixels sharing its 4 most significant
+   * bits per channel.
+   */
+  private static IndexColorModel createPalette(BufferedImage image, int colors) {
+    int[] counts = new int[PALETTE_BINS];
+    long[][] sums = new long[PALETTE_BINS][3];
+    int[] row = new int[image.getWidth()];
+    for (int y = 0; y < image.getHeight(); y++) {
+      image.getRGB(0, y, row.length, 1, row, 0, row.length);
+      for (int rgb : row) {
+        int red = rgb >> 16 & 0xff;
+        int green = rgb >> 8 & 0xff;
+        int blue = rgb & 0xff;
+        int bin = (red >> 4) << 8 | (green >> 4) << 4 | blue >> 4;
+        counts[bin]++;
+        sums[bin][0] += red;
+        sums[bin][1] += green;
+        sums[bin][2] += blue;
+      }
+    }
+    int[] bins = IntStream.range(0, PALETTE_BINS)
+        .filter(bin -> counts[bin] > 0)
+        .boxed()
+        .sorted(Comparator.comparingInt((Integer bin) -> counts[bin]).reversed())
+        .limit(colors)
+        .mapToInt(Integer::intValue)
+        .toArray();
+    byte[] reds = new byte[bins.length];
+    byte[] greens = new byte[bins.length];
+    byte[] blues = new byte[bins.length];
+    for (int i = 0; i < bins.length; i++) {
+      int count = counts[bins[i]];
+      reds[i] = (byte) (sums[bins[i]][0] / count);
+      greens[i] = (byte) (sums[bins[i]][1] / count);
+      blues[i] = (byte) (sums[bins[i]][2] / count);
+    }
+    return new IndexColorModel(8, bins.length, reds, greens, blues);
+  }
+}
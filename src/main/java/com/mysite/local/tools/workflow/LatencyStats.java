@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free latency statistics with percentiles approximated from log-linear buckets of microseconds, four buckets
+ * per power of two, so a percentile is at most a quarter above the real value.
+ */
+class LatencyStats {
+
+  private static final int SUB_BUCKET_BITS = 2;
+
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private static final int BUCKETS = Long.SIZE * SUB_BUCKETS;
+
+  private final LongAdder count = new LongAdder();
+
+  private final LongAdder totalMicros = new LongAdder();
+
+  private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+  void record(long nanos) {
+    long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+    count.increment();
+    totalMicros.add(micros);
+    maxMicros.accumulate(micros);
+    buckets.incrementAndGet(bucketOf(micros));
+  }
+
+  long getCount() {
+    return count.sum();
+  }
+
+  double getMeanMillis() {
+    long samples = count.sum();
+    return samples > 0 ? totalMicros.sum() / 1000d / samples : 0;
+  }
+
+  double getMaxMillis() {
+    return maxMicros.get() / 1000d;
+  }
+
+  /**
+   * Upper bound of the bucket the percentile falls into, capped by the maximum.
+   *
+   * @param percentile between 0 and 1
+   */
+  double getPercentileMillis(double percentile) {
+    long samples = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      samples += buckets.get(i);
+    }
+    long rank = (long) Math.ceil(percentile * samples);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += buckets.get(i);
+      if (seen > 0 && seen >= rank) {
+        return Math.min(upperBoundOf(i), maxMicros.get()) / 1000d;
+      }
+    }
+    return 0;
+  }
+
+  void reset() {
+    count.reset();
+    totalMicros.reset();
+    maxMicros.reset();
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets.set(i, 0);
+    }
+  }
+
+  static int bucketOf(long micros) {
+    if (micros < SUB_BUCKETS) {
+      return (int) micros;
+    }
+    int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(micros);
+    int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return exponent * SUB_BUCKETS + subBucket;
+  }
+
+  static long upperBoundOf(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int exponent = bucket / SUB_BUCKETS;
+    long subBucket = bucket % SUB_BUCKETS;
+    return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mysite.local.tools.workflow;
+
+import com.day.cq.dam.api.Asset;
+import com.day.cq.dam.api.DamConstants;
+import com.day.cq.dam.api.Rendition;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+/**
+ * Serves a rendition of an asset, generating it on the first request when it is a lazy rendition of the Processing
+ * Profiles applied to the asset, e.g.
+ * {@code curl -u admin:admin http://localhost:4502/content/dam/folder/image.jpg.lazyrendition.jpeg/cq5dam.web.16002.16002.jpeg}.
+ * Concurrent first requests of the same rendition share one render, which is stored for later requests.
+ */
+@Slf4j
+@Component(
+    service = Servlet.class,
+    property = {
+        Constants.SERVICE_DESCRIPTION + "=Generates lazy renditions on their first request",
+        Constants.SERVICE_VENDOR + "=Cognifide",
+        "sling.servlet.resourceTypes=" + DamConstants.NT_DAM_ASSET,
+        "sling.servlet.selectors=" + LazyRenditionServlet.SELECTOR,
+        "sling.servlet.methods=GET"})
+public class LazyRenditionServlet extends SlingSafeMethodsServlet {
+
+  static final String SELECTOR = "lazyrendition";
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Renders in flight by asset and rendition path, completed with {@code false} when no lazy rendition of that name
+   * applies to the asset.
+   */
+  private final transient Map<String, CompletableFuture<Boolean>> renders = new ConcurrentHashMap<>();
+
+  @Reference
+  private transient ResourceResolverFactory resourceResolverFactory;
+
+  @Reference
+  private transient RenditionGenerator renditionGenerator;
+
+  @Override
+  protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+    String renditionName = StringUtils.removeStart(request.getRequestPathInfo().getSuffix(), "/");
+    Asset asset = request.getResource().adaptTo(Asset.class);
+    if (asset == null || StringUtils.isBlank(renditionName) || StringUtils.containsAny(renditionName, "/", "..")) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Suffix has to be the name of a rendition of an asset.");
+      return;
+    }
+
+    Rendition rendition = asset.getRendition(renditionName);
+    if (rendition == null && generate(asset.getPath(), renditionName)) {
+      // the rendition was stored by the service resource resolver
+      ResourceResolver resourceResolver = request.getResourceResolver();
+      resourceResolver.refresh();
+      rendition = Optional.ofNullable(resourceResolver.getResource(asset.getPath()))
+          .map(resource -> resource.adaptTo(Asset.class))
+          .map(generated -> generated.getRendition(renditionName))
+          .orElse(null);
+    }
+    if (rendition == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    response.setContentType(rendition.getMimeType());
+    response.setContentLengthLong(rendition.getSize());
+    try (InputStream stream = rendition.getStream()) {
+      IOUtils.copy(stream, response.getOutputStream());
+    }
+  }
+
+  /**
+   * Generates the rendition unless a concurrent request is generating it already, in which case waits for that one.
+   *
+   * @return {@code false} when the rendition is not a lazy rendition of the asset or could not be generated
+   */
+  private boolean generate(String assetPath, String renditionName) {
+    String key = assetPath + "/" + renditionName;
+    CompletableFuture<Boolean> generation = new CompletableFuture<>();
+    CompletableFuture<Boolean> inFlight = renders.putIfAbsent(key, generation);
+    if (inFlight != null) {
+      log.debug("Rendition {} of {} is being generated, waiting for it.", renditionName, assetPath);
+      return await(inFlight);
+    }
+    try {
+      generation.complete(render(assetPath, renditionName));
+    } catch (RuntimeException e) {
+      generation.completeExceptionally(e);
+      throw e;
+    } finally {
+      renders.remove(key, generation);
+    }
+    return generation.join();
+  }
+
+  private static boolean await(CompletableFuture<Boolean> render) {
+    try {
+      return render.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (ExecutionException e) {
+      return false;
+    }
+  }
+
+  private boolean render(String assetPath, String renditionName) {
+    try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(
+        Map.of(ResourceResolverFactory.SUBSERVICE, RenditionGenerator.SUBSERVICE))) {
+      Resource assetResource = resourceResolver.getResource(assetPath);
+      if (assetResource == null) {
+        return false;
+      }
+      // nothing is rendered nor written by the service user unless a profile of the asset declares the rendition
+      if (!renditionGenerator.isLazyRendition(assetResource, renditionName)) {
+        log.debug("Rendition {} is not a lazy rendition of {}.", renditionName, assetPath);
+        return false;
+      }
+      RenditionWriteBatch writeBatch = renditionGenerator.newWriteBatch(resourceResolver, 1);
+      boolean generated = renditionGenerator.generateLazyRendition(assetResource, writeBatch, renditionName);
+      if (generated) {
+        log.info("Lazy rendition {} of {} generated on request.", renditionName, assetPath);
+      }
+      return generated && writeBatch.commit();
+    } catch (LoginException e) {
+      log.error("Could not obtain the {} service resource resolver.", RenditionGenerator.SUBSERVICE, e);
+      return false;
+    }
+  }
+}
@@ -16,194 +16,179 @@
 
 package com.mysite.local.tools.workflow;
 
-import com.adobe.cq.gfx.Gfx;
-import com.adobe.cq.gfx.Instructions;
-import com.adobe.cq.gfx.Plan;
 import com.adobe.granite.workflow.WorkflowSession;
 import com.adobe.granite.workflow.exec.WorkItem;
 import com.adobe.granite.workflow.exec.WorkflowProcess;
 import com.adobe.granite.workflow.metadata.MetaDataMap;
-import com.day.cq.dam.api.Asset;
-import com.day.cq.dam.api.Rendition;
-import com.day.cq.dam.api.renditions.RenditionMaker;
-import com.day.cq.dam.api.renditions.RenditionTemplate;
-import com.day.crx.JcrConstants;
-import java.awt.Dimension;
-import java.io.IOException;
-import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.Set;
-import javax.jcr.Node;
-import javax.jcr.RepositoryException;
-import lombok.Builder;
-import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.StringUtils;
-import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
-import org.apache.sling.commons.mime.MimeTypeService;
+import org.apache.sling.event.jobs.JobManager;
 import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 
 /**
- * Create renditions as AEM as a Cloud Asset microservices would create.
+ * Create renditions as AEM as a Cloud Asset microservices would create. Besides a single asset the payload can be a
+ * DAM folder, a workflow package or a list of paths, whose assets are processed by one workflow step.
  */
 @Slf4j
 @Component(property = {
     Constants.SERVICE_DESCRIPTION + "=Generate renditions as in Cloud",
     Constants.SERVICE_VENDOR + "=Cognifide",
     "process.label" + "=Generate Cloud renditions"})
+@Designate(ocd = LocalRenditionMakerProcess.Config.class)
 public class LocalRenditionMakerProcess implements WorkflowProcess {
 
   @Reference
-  private Gfx gfx;
+  private RenditionGenerator renditionGenerator;
 
   @Reference
-  private RenditionMaker renditionMaker;
+  private ProcessingProfileIndex processingProfileIndex;
 
   @Reference
-  private MimeTypeService mimeTypeService;
+  private JobManager jobManager;
+
+  @Reference
+  private AssetCoalescer assetCoalescer;
+
+  private Config config;
+
+  @Activate
+  @Modified
+  void activate(Config config) {
+    this.config = config;
+  }
 
   @Override
   public void execute(WorkItem workItem, WorkflowSession workflowSession, MetaDataMap metaDataMap) {
-    String assetPath = WorkflowUtil.getAssetPath(workItem);
+    List<String> payloadPaths = WorkflowUtil.getPayloadPaths(workItem);
+    if (payloadPaths.isEmpty()) {
+      log.error("Could not obtain path of the asset to process");
+      return;
+    }
+    ResourceResolver resourceResolver = Objects.requireNonNull(workflowSession.adaptTo(ResourceResolver.class));
+    boolean force = WorkflowUtil.isForced(workItem, metaDataMap);
+    WorkflowPayload payload = new WorkflowPayload(resourceResolver, payloadPaths);
 
-    if (StringUtils.isNotBlank(assetPath)) {
+    if (payload.isSingleAsset()) {
+      String assetPath = payloadPaths.get(0);
       log.debug("Starting rendition processing for {}", assetPath);
-      ResourceResolver resourceResolver = Objects.requireNonNull(workflowSession.adaptTo(ResourceResolver.class));
-      Resource assetResource = resourceResolver.getResource(assetPath);
-
-      if (assetResource != null) {
-        Set<String> processingProfilePaths = ProcessingProfilesUtil.getProcessingProfilePathsToApply(assetResource);
-        processingProfilePaths.stream()
-            .map(resourceResolver::getResource)
-            .filter(Objects::nonNull)
-            .map(ProcessingProfile::fromResource)
-            .forEach(processingProfile -> processProfile(assetResource, processingProfile, resourceResolver));
+      if (config.async_enabled()) {
+        enqueue(resourceResolver, assetPath, force);
       } else {
-        log.error("Resource {} does not exist.", assetPath);
+        RenditionWriteBatch writeBatch = renditionGenerator.newWriteBatch(resourceResolver, 1);
+        Map<String, Runnable> deferred = new LinkedHashMap<>();
+        assetCoalescer.run(assetPath, force,
+            runForced -> generateRenditions(resourceResolver, assetPath, runForced, writeBatch, deferred));
+        commit(writeBatch, deferred);
       }
     } else {
-      log.error("Could not obtain path of the asset to process");
+      processPayload(payload, resourceResolver, force);
     }
   }
 
-  private void processProfile(Resource assetResource, ProcessingProfile processingProfile,
-      ResourceResolver resourceResolver) {
-    Asset asset = assetResource.adaptTo(Asset.class);
-
-    processingProfile.getRenditions()
-        .forEach(rendition -> {
-          log.debug("Profile ({}) Starting.", processingProfile.getName());
-          processRendition(processingProfile.getName(), asset, rendition, resourceResolver);
-          log.debug("Profile ({}) Done.", processingProfile.getName());
-        });
-  }
-
-  private void processRendition(String profileName, Asset asset, ProcessingProfile.Rendition rendition,
-      ResourceResolver resourceResolver) {
-    log.debug("Profile ({}) Rendition ({}) Obtaining config.", profileName, rendition.getName());
-    NamedRenditionTemplate renditionTemplate = createRenditionTemplate(asset,
-        rendition.getName(),
-        rendition.getWid().intValue(),
-        rendition.getHei().intValue(),
-        rendition.getQlt().intValue()
-    );
-    log.debug("Profile ({}) Rendition ({}) Starting.", profileName, rendition.getName());
-    renditionMaker.generateRenditions(asset, renditionTemplate);
-    log.debug("Profile ({}) Rendition ({}) Rendition created.", profileName, rendition.getName());
-    String renditionPath = asset.getPath() + "/jcr:content/renditions/" + renditionTemplate.renditionName;
-    updateRenditionMetadata(renditionPath, resourceResolver);
-    log.debug("Profile ({}) Rendition ({}) Done.", profileName, rendition.getName());
-  }
-
-  private void updateRenditionMetadata(String renditionPath, ResourceResolver resourceResolver) {
-    Resource renditionResource = resourceResolver.getResource(renditionPath);
-    if (renditionResource != null) {
-      Optional<Dimension> optDimension = WorkflowUtil.getRenditionSize(renditionResource.adaptTo(Rendition.class));
-      if (optDimension.isPresent()) {
-        Dimension dimension = optDimension.get();
-        try {
-          Node renditionNode = Objects.requireNonNull(renditionResource.adaptTo(Node.class));
-          Node jcrContent = renditionNode.getNode(JcrConstants.JCR_CONTENT);
-          jcrContent.addMixin("dam:Metadata");
-
-          Node metadata = jcrContent.addNode("metadata", JcrConstants.NT_UNSTRUCTURED);
-          metadata.setProperty("tiff:ImageWidth", dimension.width);
-          metadata.setProperty("tiff:ImageLength", dimension.height);
-          resourceResolver.commit();
-        } catch (RepositoryException | PersistenceException e) {
-          log.error("Error while updating metadata for rendition.", e);
-        }
+  /**
+   * Streams all assets of the payload through one write batch, committed every configured number of assets.
+   */
+  private void processPayload(WorkflowPayload payload, ResourceResolver resourceResolver, boolean force) {
+    log.info("Starting rendition processing of payload {}", payload.getPaths());
+    int batchSize = Math.max(1, config.batch_size());
+    RenditionWriteBatch writeBatch = renditionGenerator.newWriteBatch(resourceResolver, batchSize);
+    Map<String, Runnable> deferred = new LinkedHashMap<>();
+    long processed = 0;
+    Iterator<String> assetPaths = payload.getAssetPaths().iterator();
+    while (assetPaths.hasNext()) {
+      String assetPath = assetPaths.next();
+      if (config.async_enabled()) {
+        enqueue(resourceResolver, assetPath, force);
       } else {
-        log.error("Could not obtain dimensions for created rendition {}", renditionPath);
+        assetCoalescer.run(assetPath, force,
+            runForced -> generateRenditions(resourceResolver, assetPath, runForced, writeBatch, deferred));
+      }
+      processed++;
+      if (processed % batchSize == 0) {
+        commit(writeBatch, deferred);
+        log.info("{} assets of payload {} processed, last {}.", processed, payload.getPaths(), assetPath);
       }
-    } else {
-      log.error("Could not obtain resource for created rendition {}", renditionPath);
     }
+    commit(writeBatch, deferred);
+    log.info("Rendition processing of payload {} finished, {} assets processed.", payload.getPaths(), processed);
   }
 
-  private NamedRenditionTemplate createRenditionTemplate(Asset asset, String renditionName, int width,
-      int height, int quality) {
-    Plan plan = gfx.createPlan();
-    plan.layer(0).set("src", asset.getPath());
-    NamedRenditionTemplate template = NamedRenditionTemplate.builder()
-        .gfx(gfx)
-        .mimeType(mimeTypeService.getMimeType(renditionName))
-        .renditionName(renditionName)
-        .plan(plan)
-        .build();
-
-    Instructions instructions = plan.view();
-    instructions.set("wid", width);
-    instructions.set("hei", height);
-    instructions.set("fit", "constrain,0");
-    instructions.set("rszfast", quality <= 90);
-    if (StringUtils.equalsAny(template.getMimeType(), "image/jpg", "image/jpeg")) {
-      instructions.set("qlt", quality);
-    } else if ("image/gif".equals(template.getMimeType())) {
-      instructions.set("quantize", "adaptive,diffuse," + quality);
+  /**
+   * Generates renditions of the asset as it is now, including changes made while a previous run was in flight. Large
+   * renditions left by the generator for the deferred stage are collected until the write batch is committed.
+   */
+  private void generateRenditions(ResourceResolver resourceResolver, String assetPath, boolean force,
+      RenditionWriteBatch writeBatch, Map<String, Runnable> deferred) {
+    resourceResolver.refresh();
+    Resource assetResource = resourceResolver.getResource(assetPath);
+    if (assetResource == null) {
+      log.error("Resource {} does not exist.", assetPath);
+      return;
     }
-    String fmt = StringUtils.substringAfter(template.getMimeType(), "/");
-    if (StringUtils.equalsAny(fmt, "png", "gif", "tif")) {
-      fmt += "-alpha";
+    Set<String> profilePaths = processingProfileIndex.getProcessingProfilePathsToApply(assetResource);
+    if (renditionGenerator.generateRenditions(assetResource, writeBatch, force, profilePaths, getFirstSchedule())) {
+      deferred.put(assetPath, () -> RenditionJob.enqueue(jobManager, assetPath, force, profilePaths,
+          RenditionGenerator.Schedule.DEFERRED));
+    }
+  }
+
+  /**
+   * Commits the write batch and then leaves the deferred renditions of its assets to jobs.
+   */
+  private static void commit(RenditionWriteBatch writeBatch, Map<String, Runnable> deferred) {
+    if (writeBatch.commit()) {
+      deferred.values().forEach(Runnable::run);
     }
-    instructions.set("fmt", fmt);
+    deferred.clear();
+  }
 
-    return template;
+  private RenditionGenerator.Schedule getFirstSchedule() {
+    return renditionGenerator.isDeferring() ? RenditionGenerator.Schedule.EARLY : RenditionGenerator.Schedule.ALL;
   }
 
-  @Getter
-  @Builder
-  private static class NamedRenditionTemplate implements RenditionTemplate {
-
-    private Plan plan;
-
-    private String renditionName;
-
-    private String mimeType;
-
-    private Gfx gfx;
-
-    @Override
-    public Rendition apply(Asset asset) {
-      return Optional.ofNullable(asset.adaptTo(Resource.class))
-          .map(Resource::getResourceResolver)
-          .map(resourceResolver -> {
-            Rendition rendition = null;
-            try (InputStream stream = gfx.render(this.plan, resourceResolver)) {
-              if (stream != null) {
-                rendition = asset.addRendition(this.renditionName, stream, this.mimeType);
-              }
-            } catch (IOException e) {
-              log.error("Exception occurred while generating the renditon.", e);
-            }
-            return rendition;
-          })
-          .orElse(null);
+  /**
+   * Leaves rendering to a job with the profiles resolved already, so the workflow thread is free for the other steps.
+   */
+  private void enqueue(ResourceResolver resourceResolver, String assetPath, boolean force) {
+    Resource assetResource = resourceResolver.getResource(assetPath);
+    if (assetResource == null) {
+      log.error("Resource {} does not exist.", assetPath);
+      return;
+    }
+    Set<String> profilePaths = processingProfileIndex.getProcessingProfilePathsToApply(assetResource);
+    if (profilePaths.isEmpty()) {
+      log.debug("No Processing Profile applies to {}.", assetResource.getPath());
+      return;
     }
+    RenditionJob.enqueue(jobManager, assetResource.getPath(), force, profilePaths, getFirstSchedule());
+  }
+
+  @ObjectClassDefinition(name = "Local Rendition Maker Process",
+      description = "Workflow step generating renditions defined in Processing Profiles.")
+  public @interface Config {
+
+    @AttributeDefinition(name = "Render asynchronously",
+        description = "Only enqueue a job per asset and return, the renditions are generated on the Local Renditions "
+            + "job queue without blocking a workflow thread.")
+    boolean async_enabled() default false;
+
+    @AttributeDefinition(name = "Batch size",
+        description = "Number of assets committed together when the payload is a folder, a workflow package or a "
+            + "list of paths. A single asset is committed on its own.")
+    int batch_size() default 50;
   }
-}
+}
\ No newline at end of file
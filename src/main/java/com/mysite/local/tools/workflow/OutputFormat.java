@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mysite.local.tools.workflow;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Formats renditions are encoded to, selected by the {@code fmt} of the rendition in the Processing Profile or by the
+ * extension of its name.
+ */
+@Getter
+@RequiredArgsConstructor
+enum OutputFormat {
+
+  JPEG("image/jpeg", "jpeg", false, List.of("jpeg", "jpg", "pjpeg", "image/jpg")),
+
+  PNG("image/png", "png", true, List.of("png", "png8")),
+
+  GIF("image/gif", "gif", true, List.of("gif")),
+
+  TIFF("image/tiff", "tif", true, List.of("tif", "tiff")),
+
+  WEBP("image/webp", "webp", true, List.of("webp"));
+
+  private final String mimeType;
+
+  /**
+   * Value of the Gfx {@code fmt} instruction, without the {@code -alpha} suffix.
+   */
+  private final String gfxName;
+
+  /**
+   * Whether the format keeps the alpha channel of the source, with {@code -alpha} appended to the Gfx format.
+   */
+  private final boolean alphaCapable;
+
+  /**
+   * Values of {@code fmt} and mime types, other than the mime type itself, selecting the format.
+   */
+  private final List<String> aliases;
+
+  /**
+   * Format of the {@code fmt} value, a file extension or a mime type, empty when it is not a known output format.
+   */
+  static Optional<OutputFormat> of(String fmt) {
+    String value = StringUtils.lowerCase(StringUtils.trim(fmt));
+    return Arrays.stream(values())
+        .filter(format -> format.mimeType.equals(value) || format.aliases.contains(value))
+        .findFirst();
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import java.awt.Dimension;
+import java.util.concurrent.Semaphore;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Memory budget shared by all renders, in megabytes of decoded rasters. Every render acquires its estimated footprint
+ * from a fair weighted semaphore before it starts, so a few huge originals wait for each other instead of exhausting
+ * the heap, while small ones still render concurrently.
+ */
+class PixelBudget {
+
+  static final long BYTES_PER_PIXEL = 4;
+
+  private static final long MEGABYTE = 1024 * 1024;
+
+  private final int totalMegabytes;
+
+  private final Semaphore permits;
+
+  /**
+   * @param totalMegabytes size of the budget, 0 or less disables admission control
+   */
+  PixelBudget(int totalMegabytes) {
+    this.totalMegabytes = Math.max(0, totalMegabytes);
+    this.permits = this.totalMegabytes > 0 ? new Semaphore(this.totalMegabytes, true) : null;
+  }
+
+  boolean isEnabled() {
+    return permits != null;
+  }
+
+  /**
+   * Whether the footprint fits into the budget at all.
+   */
+  boolean fits(long bytes) {
+    return !isEnabled() || toMegabytes(bytes) <= totalMegabytes;
+  }
+
+  /**
+   * Blocks until the footprint is available, a footprint exceeding the budget waits for all of it and renders alone.
+   */
+  Admission admit(long bytes) throws InterruptedException {
+    if (!isEnabled()) {
+      return new Admission(null, 0);
+    }
+    int requested = (int) Math.min(totalMegabytes, Math.max(1, toMegabytes(bytes)));
+    permits.acquire(requested);
+    return new Admission(permits, requested);
+  }
+
+  /**
+   * Decoded source and target rasters of a render. Engines decoding the full source need all of its pixels, a
+   * subsampled decode needs only the subsampled ones.
+   */
+  static long estimateBytes(Dimension sourceSize, RenditionSpec spec, boolean subsampled) {
+    Dimension targetSize = JavaRenderEngine.getTargetSize(sourceSize, spec.getWid(), spec.getHei());
+    int subsampling = subsampled ? JavaRenderEngine.getSubsampling(sourceSize, targetSize) : 1;
+    long decodedPixels = (long) ceilDiv(sourceSize.width, subsampling) * ceilDiv(sourceSize.height, subsampling);
+    long targetPixels = (long) targetSize.width * targetSize.height;
+    return (decodedPixels + targetPixels) * BYTES_PER_PIXEL;
+  }
+
+  private static long toMegabytes(long bytes) {
+    return (bytes + MEGABYTE - 1) / MEGABYTE;
+  }
+
+  private static int ceilDiv(int value, int divisor) {
+    return (value + divisor - 1) / divisor;
+  }
+
+  /**
+   * What happens to a render whose footprint exceeds the whole budget.
+   */
+  enum OversizePolicy {
+
+    /**
+     * Wait until the whole budget is free and render alone.
+     */
+    QUEUE,
+
+    /**
+     * Render with the Java engine decoding the source subsampled, waiting for the whole budget when that still
+     * exceeds it.
+     */
+    DOWNSAMPLE,
+
+    /**
+     * Do not render the rendition.
+     */
+    SKIP
+  }
+
+  /**
+   * Permits held by a render, released when closed.
+   */
+  @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+  static class Admission implements AutoCloseable {
+
+    private final Semaphore permits;
+
+    private final int acquired;
+
+    @Override
+    public void close() {
+      if (permits != null) {
+        permits.release(acquired);
+      }
+    }
+  }
+}
@@ -31,6 +31,7 @@ import lombok.NoArgsConstructor;
 import lombok.ToString;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.models.annotations.Model;
+import org.apache.sling.models.annotations.injectorspecific.InjectionStrategy;
 import org.apache.sling.models.annotations.injectorspecific.ValueMapValue;
 
 @Getter
@@ -39,13 +40,23 @@ import org.apache.sling.models.annotations.injectorspecific.ValueMapValue;
 @ToString
 public class ProcessingProfile {
 
+  static final String RENDER_ENGINE = "renderEngine";
+
   private final String name;
 
+  /**
+   * Name of the {@link RenderEngine} rendering the profile, {@code null} for the configured default.
+   */
+  private final String renderEngine;
+
   private final List<Rendition> renditions;
 
   static ProcessingProfile fromResource(Resource resource) {
     return ProcessingProfile.builder()
         .name(resource.getName())
+        .renderEngine(Optional.ofNullable(resource.getChild(JcrConstants.JCR_CONTENT))
+            .map(jcrContent -> jcrContent.getValueMap().get(RENDER_ENGINE, String.class))
+            .orElse(null))
         .renditions(
             StreamSupport.stream(resource.getChildren().spliterator(), false)
                 .filter(res -> !JcrConstants.JCR_CONTENT.equals(res.getName()))
@@ -82,6 +93,39 @@ public class ProcessingProfile {
     @ValueMapValue
     private String includeMimeTypes;
 
+    @ValueMapValue(injectionStrategy = InjectionStrategy.OPTIONAL)
+    private String excludeMimeTypes;
+
+    /**
+     * Renditions with a higher priority are generated first, {@code null} orders the rendition by its size.
+     */
+    @ValueMapValue(injectionStrategy = InjectionStrategy.OPTIONAL)
+    private Long priority;
+
+    /**
+     * Lazy renditions are not generated by the workflow, only on their first request.
+     */
+    @ValueMapValue(injectionStrategy = InjectionStrategy.OPTIONAL)
+    private Boolean lazy;
+
+    /**
+     * Encodes a JPEG rendition progressively, as does {@code fmt} {@code pjpeg}.
+     */
+    @ValueMapValue(injectionStrategy = InjectionStrategy.OPTIONAL)
+    private Boolean progressive;
+
+    /**
+     * Reduces a PNG rendition to a palette, as does {@code fmt} {@code png8}.
+     */
+    @ValueMapValue(injectionStrategy = InjectionStrategy.OPTIONAL)
+    private Boolean palette;
+
+    /**
+     * Deflate level of a PNG rendition from 0 to 9, {@code null} for the encoder default.
+     */
+    @ValueMapValue(injectionStrategy = InjectionStrategy.OPTIONAL)
+    private Long compressionLevel;
+
     @ValueMapValue
     @Named("jcr:title")
     private String title;
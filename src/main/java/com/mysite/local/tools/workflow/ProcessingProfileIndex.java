@@ -0,0 +1,158 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import com.day.crx.JcrConstants;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Resolves Processing Profiles of DAM folders in memory. Folders are kept in a trie keyed by path segments, each node
+ * holding the profiles effective for the folder, so assets of the same folder are resolved without reading the
+ * repository again. A folder and everything below it is dropped when its {@code jcr:content} changes.
+ */
+@Slf4j
+@Component(
+    service = {ProcessingProfileIndex.class, ResourceChangeListener.class},
+    property = {
+        Constants.SERVICE_DESCRIPTION + "=DAM folder to Processing Profiles index",
+        Constants.SERVICE_VENDOR + "=Cognifide",
+        ResourceChangeListener.PATHS + "=" + ProcessingProfilesUtil.DAM_ROOT})
+@Designate(ocd = ProcessingProfileIndex.Config.class)
+public class ProcessingProfileIndex implements ResourceChangeListener {
+
+  private static final String JCR_CONTENT_SUFFIX = "/" + JcrConstants.JCR_CONTENT;
+
+  private final AtomicLong invalidations = new AtomicLong();
+
+  private volatile FolderNode root = new FolderNode();
+
+  /**
+   * Paths of the Processing Profiles applied to the asset, same as
+   * {@link ProcessingProfilesUtil#getProcessingProfilePathsToApply(Resource)}.
+   */
+  Set<String> getProcessingProfilePathsToApply(Resource assetResource) {
+    String folderPath = StringUtils.substringBeforeLast(assetResource.getPath(), "/");
+    if (!isSameOrDescendant(folderPath, ProcessingProfilesUtil.DAM_ROOT)) {
+      return Collections.emptySet();
+    }
+    long version = invalidations.get();
+    ResourceResolver resourceResolver = assetResource.getResourceResolver();
+
+    FolderNode node = root;
+    String path = ProcessingProfilesUtil.DAM_ROOT;
+    Set<String> profiles = node.resolve(path, Collections.emptySet(), resourceResolver, version, invalidations);
+    for (String segment : getSegments(folderPath)) {
+      path = path + "/" + segment;
+      node = node.children.computeIfAbsent(segment, name -> new FolderNode());
+      profiles = node.resolve(path, profiles, resourceResolver, version, invalidations);
+    }
+    return profiles;
+  }
+
+  @Override
+  public void onChange(List<ResourceChange> changes) {
+    changes.stream()
+        .map(ResourceChange::getPath)
+        .forEach(this::invalidate);
+  }
+
+  private void invalidate(String changedPath) {
+    // profiles are assigned on jcr:content of the folder, removed or moved folders are reported by their own path
+    String folderPath = StringUtils.removeEnd(changedPath, JCR_CONTENT_SUFFIX);
+    if (StringUtils.contains(folderPath, JCR_CONTENT_SUFFIX + "/")
+        || !isSameOrDescendant(folderPath, ProcessingProfilesUtil.DAM_ROOT)) {
+      return;
+    }
+    invalidations.incrementAndGet();
+    if (ProcessingProfilesUtil.DAM_ROOT.equals(folderPath)) {
+      root = new FolderNode();
+      return;
+    }
+    FolderNode parent = root;
+    String[] segments = getSegments(folderPath);
+    for (int i = 0; i < segments.length - 1 && parent != null; i++) {
+      parent = parent.children.get(segments[i]);
+    }
+    if (parent != null) {
+      parent.children.remove(segments[segments.length - 1]);
+      log.debug("Processing profiles of {} invalidated.", folderPath);
+    }
+  }
+
+  private static String[] getSegments(String folderPath) {
+    return StringUtils.split(StringUtils.removeStart(folderPath, ProcessingProfilesUtil.DAM_ROOT), '/');
+  }
+
+  private static boolean isSameOrDescendant(String path, String ancestorPath) {
+    return StringUtils.equals(path, ancestorPath) || StringUtils.startsWith(path, ancestorPath + "/");
+  }
+
+  private static class FolderNode {
+
+    private final Map<String, FolderNode> children = new ConcurrentHashMap<>();
+
+    private volatile Set<String> effectiveProfiles;
+
+    Set<String> resolve(String path, Set<String> parentProfiles, ResourceResolver resourceResolver, long version,
+        AtomicLong invalidations) {
+      Set<String> profiles = effectiveProfiles;
+      if (profiles == null) {
+        Optional<String> ownProfile = Optional.ofNullable(resourceResolver.getResource(path))
+            .flatMap(ProcessingProfilesUtil::getProcessingProfilePath);
+        if (ownProfile.isPresent()) {
+          Set<String> merged = new HashSet<>(parentProfiles);
+          merged.add(ownProfile.get());
+          profiles = Collections.unmodifiableSet(merged);
+        } else {
+          profiles = parentProfiles;
+        }
+        // a folder changed while resolving might already be stale, it is resolved again on the next request
+        if (version == invalidations.get()) {
+          effectiveProfiles = profiles;
+        }
+      }
+      return profiles;
+    }
+  }
+
+  @ObjectClassDefinition(name = "Processing Profile Index",
+      description = "Caches Processing Profiles effective for DAM folders.")
+  public @interface Config {
+
+    @AttributeDefinition(name = "Observed paths",
+        description = "DAM roots observed for changes of the assigned Processing Profiles.")
+    String[] resource_paths() default {ProcessingProfilesUtil.DAM_ROOT};
+  }
+}
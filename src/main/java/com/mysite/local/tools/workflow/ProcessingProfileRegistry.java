@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.apache.sling.commons.mime.MimeTypeService;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Keeps Processing Profiles compiled to {@link RenditionSpec}s, so that the profile content is read once and not for
+ * every processed asset. Compiled profiles are dropped whenever anything below them changes.
+ */
+@Slf4j
+@Component(
+    service = {ProcessingProfileRegistry.class, ResourceChangeListener.class},
+    property = {
+        Constants.SERVICE_DESCRIPTION + "=Compiled Processing Profiles registry",
+        Constants.SERVICE_VENDOR + "=Cognifide",
+        ResourceChangeListener.PATHS + "=" + ProcessingProfileRegistry.PROFILES_ROOT})
+@Designate(ocd = ProcessingProfileRegistry.Config.class)
+public class ProcessingProfileRegistry implements ResourceChangeListener {
+
+  static final String PROFILES_ROOT = "/conf";
+
+  private final Map<String, List<RenditionSpec>> profiles = new ConcurrentHashMap<>();
+
+  private final AtomicLong invalidations = new AtomicLong();
+
+  @Reference
+  private MimeTypeService mimeTypeService;
+
+  /**
+   * Rendition specs of the profile at the given path, empty when the profile does not exist.
+   */
+  List<RenditionSpec> getRenditionSpecs(String profilePath, ResourceResolver resourceResolver) {
+    List<RenditionSpec> specs = profiles.get(profilePath);
+    if (specs == null) {
+      long version = invalidations.get();
+      Resource profileResource = resourceResolver.getResource(profilePath);
+      if (profileResource == null) {
+        return Collections.emptyList();
+      }
+      specs = compile(ProcessingProfile.fromResource(profileResource));
+      // a profile changed while compiling might already be stale, it is compiled again on the next request
+      if (version == invalidations.get()) {
+        profiles.put(profilePath, specs);
+      }
+      log.debug("Processing profile {} compiled.", profilePath);
+    }
+    return specs;
+  }
+
+  @Override
+  public void onChange(List<ResourceChange> changes) {
+    changes.stream()
+        .map(ResourceChange::getPath)
+        .forEach(this::invalidate);
+  }
+
+  private void invalidate(String changedPath) {
+    invalidations.incrementAndGet();
+    profiles.keySet().removeIf(profilePath -> isSameOrDescendant(changedPath, profilePath)
+        || isSameOrDescendant(profilePath, changedPath));
+  }
+
+  private List<RenditionSpec> compile(ProcessingProfile processingProfile) {
+    return processingProfile.getRenditions().stream()
+        .map(rendition -> RenditionSpec.compile(processingProfile, rendition,
+            mimeTypeService::getMimeType))
+        .collect(Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList));
+  }
+
+  private static boolean isSameOrDescendant(String path, String ancestorPath) {
+    return StringUtils.equals(path, ancestorPath) || StringUtils.startsWith(path, ancestorPath + "/");
+  }
+
+  @ObjectClassDefinition(name = "Processing Profile Registry",
+      description = "Caches compiled Processing Profiles used to generate local renditions.")
+  public @interface Config {
+
+    @AttributeDefinition(name = "Observed paths",
+        description = "Roots of the Processing Profiles, compiled profiles below them are dropped when they change.")
+    String[] resource_paths() default {PROFILES_ROOT};
+  }
+}
@@ -33,19 +33,28 @@ import org.apache.sling.api.resource.Resource;
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 class ProcessingProfilesUtil {
 
+  static final String DAM_ROOT = "/content/dam";
+
+  static final String PROCESSING_PROFILE = "processingProfile";
+
   static Set<String> getProcessingProfilePathsToApply(Resource assetResource) {
     return (new DamNodesIterator(assetResource)).toStream()
-        .map(optResource ->
-            optResource.map(resource -> resource.getChild(JcrConstants.JCR_CONTENT))
-                .map(Resource::getValueMap)
-                .map(jcrContentValueMap -> jcrContentValueMap.get("processingProfile"))
-                .filter(String.class::isInstance)
-                .map(String.class::cast)
-        )
+        .map(optResource -> optResource.flatMap(ProcessingProfilesUtil::getProcessingProfilePath))
         .flatMap(Optional::stream)
         .collect(Collectors.toSet());
   }
 
+  /**
+   * Processing Profile assigned directly to the folder.
+   */
+  static Optional<String> getProcessingProfilePath(Resource folderResource) {
+    return Optional.ofNullable(folderResource.getChild(JcrConstants.JCR_CONTENT))
+        .map(Resource::getValueMap)
+        .map(jcrContentValueMap -> jcrContentValueMap.get(PROCESSING_PROFILE))
+        .filter(String.class::isInstance)
+        .map(String.class::cast);
+  }
+
   private static class DamNodesIterator implements Iterator<Optional<Resource>> {
 
     private Optional<Resource> optResource;
@@ -57,7 +66,7 @@ class ProcessingProfilesUtil {
     @Override
     public boolean hasNext() {
       return optResource.map(Resource::getPath)
-          .map(path -> StringUtils.startsWith(path, "/content/dam/"))
+          .map(path -> StringUtils.startsWith(path, DAM_ROOT + "/"))
           .orElse(false);
     }
 
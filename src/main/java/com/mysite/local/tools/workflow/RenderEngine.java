@@ -0,0 +1,44 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import java.io.IOException;
+import java.io.InputStream;
+import org.apache.sling.api.resource.ResourceResolver;
+
+/**
+ * Renders a rendition from the original or from another rendition of an asset. Engines are registered as services and
+ * selected by name, per Processing Profile or by the configuration of {@link RenditionGenerator}. Engines take the
+ * internal {@link RenditionSpec}, so they are provided by this bundle only.
+ */
+interface RenderEngine {
+
+  /**
+   * Name the engine is selected by.
+   */
+  String getName();
+
+  /**
+   * Renders the rendition, the stream is closed by the caller.
+   *
+   * @param sourcePath path of the asset or of the rendition the rendition is rendered from
+   * @param spec rendition to render
+   * @param resourceResolver resolver used to read the source
+   * @return rendered rendition, {@code null} when the source could not be rendered
+   */
+  InputStream render(String sourcePath, RenditionSpec spec, ResourceResolver resourceResolver) throws IOException;
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs render tasks on a bounded pool shared by all workflow threads. With a single thread configured the tasks run
+ * sequentially on the calling thread.
+ */
+@Slf4j
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+class RenderExecutor implements AutoCloseable {
+
+  private static final String THREAD_NAME_PREFIX = "local-renditions-render-";
+
+  private final ExecutorService executorService;
+
+  private final Semaphore permits;
+
+  static RenderExecutor create(int threads, boolean virtualThreads) {
+    if (threads <= 1) {
+      return new RenderExecutor(null, null);
+    }
+    ExecutorService executorService = virtualThreads
+        ? newVirtualThreadExecutor().orElseGet(() -> newFixedThreadPool(threads))
+        : newFixedThreadPool(threads);
+    // virtual threads are not bounded by the executor itself
+    return new RenderExecutor(executorService, new Semaphore(threads));
+  }
+
+  boolean isParallel() {
+    return executorService != null;
+  }
+
+  /**
+   * Runs all tasks and waits until every one of them is finished.
+   */
+  void runAll(List<Runnable> tasks) {
+    if (!isParallel() || tasks.size() < 2) {
+      tasks.forEach(Runnable::run);
+      return;
+    }
+    List<Future<?>> futures = tasks.stream()
+        .map(task -> executorService.submit(() -> runWithPermit(task)))
+        .collect(Collectors.toList());
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        futures.forEach(pending -> pending.cancel(true));
+        log.warn("Interrupted while waiting for renditions to be rendered.");
+        return;
+      } catch (ExecutionException e) {
+        log.error("Exception occurred while rendering the rendition.", e.getCause());
+      }
+    }
+  }
+
+  /**
+   * Stops accepting tasks, the tasks already submitted are still run.
+   */
+  @Override
+  public void close() {
+    if (executorService != null) {
+      executorService.shutdown();
+    }
+  }
+
+  private void runWithPermit(Runnable task) {
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+    try {
+      task.run();
+    } finally {
+      permits.release();
+    }
+  }
+
+  private static ExecutorService newFixedThreadPool(int threads) {
+    AtomicInteger counter = new AtomicInteger();
+    ThreadFactory threadFactory = runnable -> {
+      Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+    return Executors.newFixedThreadPool(threads, threadFactory);
+  }
+
+  private static Optional<ExecutorService> newVirtualThreadExecutor() {
+    try {
+      // available since Java 21, the bundle is compiled against Java 11
+      return Optional.of((ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null));
+    } catch (ReflectiveOperationException e) {
+      log.info("Virtual threads are not available in this runtime, using a fixed thread pool instead.");
+      return Optional.empty();
+    }
+  }
+}
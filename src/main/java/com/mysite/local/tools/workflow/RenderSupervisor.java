@@ -0,0 +1,160 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mysite.local.tools.workflow;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs renders with a deadline on a bounded pool of its own, so that the waiting thread is released when the deadline
+ * passes. A render exceeding its deadline is interrupted and abandoned, but its thread is only free again once the
+ * render returns, as decoders do not always react to interrupts. Renders wait for a free thread within their deadline,
+ * so abandoned renders that never return cannot grow the pool.
+ */
+@Slf4j
+class RenderSupervisor implements AutoCloseable {
+
+  private static final String THREAD_NAME_PREFIX = "local-renditions-supervised-";
+
+  private static final long KEEP_ALIVE_SECONDS = 60;
+
+  private final ThreadPoolExecutor executorService;
+
+  RenderSupervisor(int threads) {
+    AtomicInteger counter = new AtomicInteger();
+    this.executorService = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), runnable -> {
+          Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + counter.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    executorService.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Runs the render and waits until it is finished or the timeout elapses, including the time waiting for a thread.
+   * An abandoned render that has not started yet still runs once a thread is free, so that it can release what it
+   * holds.
+   *
+   * @param abandon called when the timeout elapses, returns {@code false} when the render has just finished and its
+   *     result can be used
+   * @return {@code false} when the render was abandoned
+   */
+  boolean run(Runnable render, long timeoutNanos, BooleanSupplier abandon) {
+    SupervisedRender supervised = new SupervisedRender(render);
+    Future<?> future = executorService.submit(supervised);
+    try {
+      future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+      return true;
+    } catch (TimeoutException e) {
+      if (abandon.getAsBoolean()) {
+        supervised.abandon();
+        return false;
+      }
+      return await(future);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      if (abandon.getAsBoolean()) {
+        supervised.abandon();
+        return false;
+      }
+      return true;
+    } catch (ExecutionException e) {
+      log.error("Exception occurred while rendering the rendition.", e.getCause());
+      return true;
+    }
+  }
+
+  /**
+   * Waits for the render that finished right when it was about to be abandoned.
+   */
+  private static boolean await(Future<?> future) {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      log.error("Exception occurred while rendering the rendition.", e.getCause());
+    }
+    return true;
+  }
+
+  /**
+   * Stops accepting renders, the renders already submitted are still run, so that abandoned ones release what they
+   * hold.
+   */
+  @Override
+  public void close() {
+    executorService.shutdown();
+  }
+
+  /**
+   * Render that is interrupted when abandoned, also when it starts only after being abandoned.
+   */
+  private static class SupervisedRender implements Runnable {
+
+    private final Runnable render;
+
+    /**
+     * Thread running the render, guarded by this.
+     */
+    private Thread thread;
+
+    /**
+     * Guarded by this.
+     */
+    private boolean abandoned;
+
+    SupervisedRender(Runnable render) {
+      this.render = render;
+    }
+
+    @Override
+    public void run() {
+      synchronized (this) {
+        thread = Thread.currentThread();
+        if (abandoned) {
+          thread.interrupt();
+        }
+      }
+      try {
+        render.run();
+      } finally {
+        synchronized (this) {
+          thread = null;
+          // the interrupt of an abandoned render must not hit the next render of the thread
+          Thread.interrupted();
+        }
+      }
+    }
+
+    synchronized void abandon() {
+      abandoned = true;
+      if (thread != null) {
+        thread.interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mysite.local.tools.workflow;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Rendered renditions on local disk keyed by the identity of the original and everything that affects the rendered
+ * binary, so that an original uploaded to several paths is rendered once. An in-memory index keeps the entries in
+ * access order and evicts the least recently used ones once the cache exceeds its size. Entries of a previous run are
+ * indexed again on creation, oldest first.
+ */
+@Slf4j
+class RenditionCache {
+
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  @Getter
+  private final Path directory;
+
+  /**
+   * Guarded by {@link #entries}.
+   */
+  private long maxBytes;
+
+  /**
+   * Sizes of the cached files in access order, guarded by itself.
+   */
+  private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long totalBytes;
+
+  /**
+   * @param directory directory of the cached files, created when it does not exist
+   * @param maxBytes size the cache is kept within
+   */
+  RenditionCache(Path directory, long maxBytes) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    load();
+  }
+
+  boolean contains(String key) {
+    synchronized (entries) {
+      return entries.containsKey(key);
+    }
+  }
+
+  /**
+   * Stream of the cached rendition, {@code null} when it is not cached.
+   */
+  InputStream get(String key) {
+    synchronized (entries) {
+      if (entries.get(key) == null) {
+        return null;
+      }
+    }
+    try {
+      return Files.newInputStream(directory.resolve(key));
+    } catch (IOException e) {
+      log.debug("Cached rendition {} is not readable anymore.", key, e);
+      remove(key);
+      return null;
+    }
+  }
+
+  /**
+   * Passes the rendered stream through and stores it under the key once it was read to the end and closed. When the
+   * cache cannot be written the rendered stream is returned as is.
+   */
+  InputStream caching(String key, InputStream rendered) {
+    try {
+      Path file = Files.createTempFile(directory, key, TEMP_SUFFIX);
+      return new CachingInputStream(rendered, key, file, Files.newOutputStream(file));
+    } catch (IOException e) {
+      log.warn("Could not write rendition {} to the cache.", key, e);
+      return rendered;
+    }
+  }
+
+  /**
+   * Changes the size the cache is kept within, evicting the least recently used entries exceeding it.
+   */
+  void resize(long maxBytes) {
+    List<String> evicted;
+    synchronized (entries) {
+      this.maxBytes = maxBytes;
+      evicted = evict();
+    }
+    evicted.forEach(evictedKey -> delete(directory.resolve(evictedKey)));
+  }
+
+  long getSize() {
+    synchronized (entries) {
+      return totalBytes;
+    }
+  }
+
+  private void load() {
+    try {
+      Files.createDirectories(directory);
+      List<File> files;
+      try (Stream<Path> paths = Files.list(directory)) {
+        files = paths.map(Path::toFile)
+            .filter(File::isFile)
+            .sorted(Comparator.comparingLong(File::lastModified))
+            .collect(Collectors.toList());
+      }
+      for (File file : files) {
+        if (file.getName().endsWith(TEMP_SUFFIX)) {
+          delete(file.toPath());
+        } else {
+          add(file.getName(), file.length());
+        }
+      }
+      log.info("Rendition cache {} holds {} renditions, {} MB.", directory, files.size(),
+          getSize() / (1024 * 1024));
+    } catch (IOException e) {
+      log.error("Could not read rendition cache {}.", directory, e);
+    }
+  }
+
+  private void publish(String key, Path file) {
+    try {
+      Path target = directory.resolve(key);
+      Files.move(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      add(key, Files.size(target));
+    } catch (IOException e) {
+      log.warn("Could not store rendition {} in the cache.", key, e);
+      delete(file);
+    }
+  }
+
+  private void add(String key, long size) {
+    List<String> evicted;
+    synchronized (entries) {
+      Long previous = entries.put(key, size);
+      totalBytes += size - (previous != null ? previous : 0);
+      evicted = evict();
+    }
+    // renditions being read keep their content until they are closed
+    evicted.forEach(evictedKey -> delete(directory.resolve(evictedKey)));
+  }
+
+  /**
+   * Removes the least recently used entries until the cache fits its size, called holding {@link #entries}.
+   *
+   * @return keys of the removed entries, whose files are left to be deleted
+   */
+  private List<String> evict() {
+    List<String> evicted = new ArrayList<>();
+    Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+    while (totalBytes > maxBytes && eldest.hasNext()) {
+      Map.Entry<String, Long> entry = eldest.next();
+      totalBytes -= entry.getValue();
+      evicted.add(entry.getKey());
+      eldest.remove();
+    }
+    return evicted;
+  }
+
+  private void remove(String key) {
+    synchronized (entries) {
+      Long size = entries.remove(key);
+      totalBytes -= size != null ? size : 0;
+    }
+  }
+
+  private static void delete(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      log.warn("Could not delete cached rendition {}.", file, e);
+    }
+  }
+
+  /**
+   * Copies everything read to the file, which is published to the cache when the stream was read to the end.
+   */
+  private class CachingInputStream extends FilterInputStream {
+
+    private final String key;
+
+    private final Path file;
+
+    private OutputStream copy;
+
+    private boolean complete;
+
+    CachingInputStream(InputStream rendered, String key, Path file, OutputStream copy) {
+      super(rendered);
+      this.key = key;
+      this.file = file;
+      this.copy = copy;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] single = new byte[1];
+      int read = read(single, 0, 1);
+      return read < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int read = super.read(buffer, offset, length);
+      if (read < 0) {
+        complete = true;
+      } else if (read > 0 && copy != null) {
+        try {
+          copy.write(buffer, offset, read);
+        } catch (IOException e) {
+          log.warn("Could not write rendition {} to the cache.", key, e);
+          abandon();
+        }
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      // skipped bytes are not copied
+      abandon();
+      return super.skip(n);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        if (copy != null) {
+          try {
+            copy.close();
+          } catch (IOException e) {
+            log.warn("Could not write rendition {} to the cache.", key, e);
+            copy = null;
+          }
+        }
+        if (copy != null && complete) {
+          publish(key, file);
+        } else {
+          delete(file);
+        }
+        copy = null;
+      }
+    }
+
+    private void abandon() {
+      if (copy != null) {
+        try {
+          copy.close();
+        } catch (IOException e) {
+          log.debug("Could not close abandoned copy of rendition {}.", key, e);
+        }
+        copy = null;
+      }
+    }
+  }
+}
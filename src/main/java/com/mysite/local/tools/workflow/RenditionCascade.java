@@ -0,0 +1,109 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+/**
+ * Plans the order in which renditions of a profile are rendered, so that the largest rendition is rendered from the
+ * original and every smaller one from the nearest larger rendition that is good enough to be used as a source. A
+ * rendition in a format with alpha is only rendered from a source that keeps alpha too.
+ */
+@RequiredArgsConstructor
+class RenditionCascade {
+
+  private static final int LOSSLESS_QUALITY = 100;
+
+  private final int minSourceQuality;
+
+  List<Step> plan(List<RenditionSpec> renditions) {
+    List<Step> steps = new ArrayList<>();
+    renditions.stream()
+        .sorted(Comparator.comparingLong(RenditionSpec::getArea).reversed()
+            .thenComparing(RenditionSpec::getName))
+        .forEach(rendition -> {
+          RenditionSpec source = steps.stream()
+              .map(Step::getRendition)
+              .filter(candidate -> isValidSource(candidate, rendition))
+              .min(Comparator.comparingLong(RenditionSpec::getArea))
+              .orElse(null);
+          steps.add(new Step(rendition, source));
+        });
+    return steps;
+  }
+
+  private boolean isValidSource(RenditionSpec candidate, RenditionSpec target) {
+    int candidateQuality = effectiveQuality(candidate);
+    return candidate.getWid() >= target.getWid()
+        && candidate.getHei() >= target.getHei()
+        && candidateQuality >= minSourceQuality
+        && candidateQuality >= effectiveQuality(target)
+        && (isAlphaCapable(candidate) || !isAlphaCapable(target));
+  }
+
+  /**
+   * Whether the rendition keeps transparency, a target that does must not be rendered from a source that dropped it.
+   */
+  private static boolean isAlphaCapable(RenditionSpec rendition) {
+    return rendition.getOutputFormat().map(OutputFormat::isAlphaCapable).orElse(false);
+  }
+
+  /**
+   * Quality of the encoded rendition. JPEG and WebP are encoded with the profile quality, palette based GIF and PNG
+   * are never good enough to be a source and the remaining formats are lossless.
+   */
+  private static int effectiveQuality(RenditionSpec rendition) {
+    OutputFormat format = rendition.getOutputFormat().orElse(null);
+    if (format == OutputFormat.JPEG || format == OutputFormat.WEBP) {
+      return rendition.getQlt();
+    } else if (format == OutputFormat.GIF || rendition.isPalette()) {
+      return 0;
+    }
+    return LOSSLESS_QUALITY;
+  }
+
+  @Getter
+  @RequiredArgsConstructor
+  @EqualsAndHashCode
+  @ToString
+  static class Step {
+
+    private final RenditionSpec rendition;
+
+    /**
+     * Rendition to render from, {@code null} when the rendition is rendered from the original.
+     */
+    private final RenditionSpec sourceRendition;
+
+    static Step fromOriginal(RenditionSpec rendition) {
+      return new Step(rendition, null);
+    }
+
+    /**
+     * Name of the rendition to render from, {@code null} when the rendition is rendered from the original.
+     */
+    String getSourceRenditionName() {
+      return sourceRendition != null ? sourceRendition.getName() : null;
+    }
+  }
+}
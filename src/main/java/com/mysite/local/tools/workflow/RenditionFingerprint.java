@@ -0,0 +1,110 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import com.day.cq.dam.api.Asset;
+import com.day.cq.dam.api.Rendition;
+import com.day.crx.JcrConstants;
+import java.util.Optional;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.api.JackrabbitValue;
+import org.apache.sling.api.resource.Resource;
+
+/**
+ * Identifies a generated rendition by the original binary it was rendered from and the spec it was rendered with, so
+ * that renditions which would come out the same are not rendered again.
+ */
+@Slf4j
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+class RenditionFingerprint {
+
+  static final String FINGERPRINT = "renditionFingerprint";
+
+  private static final String DAM_SHA1 = "dam:sha1";
+
+  private static final String METADATA_PATH = JcrConstants.JCR_CONTENT + "/" + RenditionWriteBatch.METADATA_NODE;
+
+  private static final String DATA_PATH = JcrConstants.JCR_CONTENT + "/" + JcrConstants.JCR_DATA;
+
+  /**
+   * Identity of the original binary, {@code null} when it could not be obtained.
+   */
+  private final String originalIdentity;
+
+  static RenditionFingerprint forAsset(Asset asset) {
+    String identity = Optional.ofNullable(asset.getMetadataValue(DAM_SHA1))
+        .filter(StringUtils::isNotBlank)
+        .or(() -> Optional.ofNullable(asset.getOriginal()).flatMap(RenditionFingerprint::getContentIdentity))
+        .orElse(null);
+    if (identity == null) {
+      log.debug("Could not identify the original of {}, renditions are always generated.", asset.getPath());
+    }
+    return new RenditionFingerprint(identity);
+  }
+
+  /**
+   * Fingerprint of the rendition rendered with the spec, {@code null} when the original could not be identified.
+   */
+  String of(RenditionSpec spec) {
+    return originalIdentity != null ? DigestUtils.sha256Hex(originalIdentity + "|" + spec.getFingerprint()) : null;
+  }
+
+  /**
+   * Key of the binary rendered with the spec by the engine from the source, equal for originals with the same content
+   * whatever their path, {@code null} when the original could not be identified.
+   */
+  String ofBinary(RenditionSpec spec, String engineName, String source) {
+    return originalIdentity != null
+        ? DigestUtils.sha256Hex(String.join("|", originalIdentity, spec.getRenderKey(), engineName, source))
+        : null;
+  }
+
+  /**
+   * Whether the existing rendition was rendered from the same original with the same spec.
+   */
+  boolean isUpToDate(Asset asset, RenditionSpec spec) {
+    String fingerprint = of(spec);
+    return fingerprint != null && Optional.ofNullable(asset.getRendition(spec.getName()))
+        .map(rendition -> rendition.getChild(METADATA_PATH))
+        .map(Resource::getValueMap)
+        .map(metadata -> metadata.get(FINGERPRINT, String.class))
+        .filter(fingerprint::equals)
+        .isPresent();
+  }
+
+  private static Optional<String> getContentIdentity(Rendition original) {
+    try {
+      Node node = original.adaptTo(Node.class);
+      if (node != null && node.hasProperty(DATA_PATH)) {
+        Value value = node.getProperty(DATA_PATH).getValue();
+        if (value instanceof JackrabbitValue) {
+          return Optional.ofNullable(((JackrabbitValue) value).getContentIdentity());
+        }
+      }
+    } catch (RepositoryException e) {
+      log.warn("Could not read the identity of original {}", original.getPath(), e);
+    }
+    return Optional.empty();
+  }
+}
@@ -0,0 +1,1369 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import com.day.cq.dam.api.Asset;
+import com.day.cq.dam.api.DamConstants;
+import com.day.cq.dam.api.Rendition;
+import com.day.cq.dam.api.renditions.RenditionMaker;
+import com.day.cq.dam.api.renditions.RenditionTemplate;
+import java.awt.Dimension;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Generates renditions of an asset defined by the Processing Profiles applied to it, shared by the workflow process
+ * and the other entry points.
+ */
+@Slf4j
+@Component(
+    service = RenditionGenerator.class,
+    property = {
+        Constants.SERVICE_DESCRIPTION + "=Generates renditions as in Cloud",
+        Constants.SERVICE_VENDOR + "=Cognifide"})
+@Designate(ocd = RenditionGenerator.Config.class)
+public class RenditionGenerator {
+
+  /**
+   * Sub-service the jobs and servlets generating renditions outside of a workflow log in with.
+   */
+  static final String SUBSERVICE = "local-renditions";
+
+  private static final String RENDITIONS_PATH = "/jcr:content/renditions/";
+
+  private static final String CACHE_DIRECTORY = "local-renditions-cache";
+
+  /**
+   * Source of cache keys of renditions rendered from the original.
+   */
+  private static final String ORIGINAL_SOURCE = "original";
+
+  @Reference(service = RenderEngine.class, cardinality = ReferenceCardinality.MULTIPLE,
+      policy = ReferencePolicy.DYNAMIC, policyOption = ReferencePolicyOption.GREEDY)
+  private volatile List<RenderEngine> renderEngines;
+
+  @Reference
+  private RenditionMaker renditionMaker;
+
+  @Reference
+  private ProcessingProfileRegistry processingProfileRegistry;
+
+  @Reference
+  private ProcessingProfileIndex processingProfileIndex;
+
+  @Reference
+  private RenditionMetrics metrics;
+
+  /**
+   * Configuration and the pools built from it, replaced together when the configuration changes.
+   */
+  private volatile RenderResources resources;
+
+  @Activate
+  @Modified
+  void activate(Config config) {
+    RenderResources previous = resources;
+    this.resources = new RenderResources(config, previous);
+    if (previous != null) {
+      // runs started with the previous configuration finish on its pools
+      previous.release();
+    }
+  }
+
+  @Deactivate
+  void deactivate() {
+    resources.release();
+  }
+
+  /**
+   * Write batch that reports its commits to the rendition metrics.
+   */
+  RenditionWriteBatch newWriteBatch(ResourceResolver resourceResolver, int assetsPerCommit) {
+    return new RenditionWriteBatch(resourceResolver, assetsPerCommit, metrics);
+  }
+
+  /**
+   * Whether large renditions are left to a deferred stage, so the entry points generate the {@link Schedule#EARLY}
+   * renditions first and the {@link Schedule#DEFERRED} ones later.
+   */
+  boolean isDeferring() {
+    return resources.getConfig().schedule_earlyMaxSize() > 0;
+  }
+
+  /**
+   * Generates renditions of all Processing Profiles applied to the asset. Changes are left to the write batch to be
+   * persisted.
+   */
+  void generateRenditions(Resource assetResource, RenditionWriteBatch writeBatch, boolean force) {
+    generateRenditions(assetResource, writeBatch, force,
+        processingProfileIndex.getProcessingProfilePathsToApply(assetResource));
+  }
+
+  /**
+   * Generates renditions of the given Processing Profiles, resolved when the asset was enqueued.
+   */
+  void generateRenditions(Resource assetResource, RenditionWriteBatch writeBatch, boolean force,
+      Set<String> processingProfilePaths) {
+    generateRenditions(assetResource, writeBatch, force, processingProfilePaths, Schedule.ALL);
+  }
+
+  /**
+   * Generates the renditions of the given Processing Profiles that belong to the schedule. Lazy renditions are not
+   * generated, those left over from a previous original are removed so that they are generated again on request.
+   *
+   * @return {@code true} when renditions of the asset are left for the deferred stage
+   */
+  boolean generateRenditions(Resource assetResource, RenditionWriteBatch writeBatch, boolean force,
+      Set<String> processingProfilePaths, Schedule schedule) {
+    RenderResources runResources = acquireResources();
+    try {
+      return generateRenditions(runResources, assetResource, writeBatch, force, processingProfilePaths, schedule);
+    } finally {
+      runResources.release();
+    }
+  }
+
+  private boolean generateRenditions(RenderResources runResources, Resource assetResource,
+      RenditionWriteBatch writeBatch, boolean force, Set<String> processingProfilePaths, Schedule schedule) {
+    Asset asset = Objects.requireNonNull(assetResource.adaptTo(Asset.class));
+    AssetContext assetContext = createAssetContext(runResources, assetResource, writeBatch, force);
+    List<List<RenditionSpec>> processingProfiles = getRenditionSpecs(assetContext, processingProfilePaths,
+        spec -> !spec.isLazy());
+    // a deferred stage is only left when it has anything to render
+    boolean deferred = schedule == Schedule.EARLY && processingProfiles.stream()
+        .flatMap(List::stream)
+        .filter(spec -> !isScheduled(assetContext, spec, Schedule.EARLY) && spec.accepts(asset.getMimeType()))
+        .anyMatch(spec -> force || !assetContext.getFingerprint().isUpToDate(asset, spec));
+    Set<String> eagerNames = processingProfiles.stream()
+        .flatMap(List::stream)
+        .map(RenditionSpec::getName)
+        .collect(Collectors.toSet());
+    processingProfiles = processingProfiles.stream()
+        .map(specs -> specs.stream()
+            .filter(spec -> isScheduled(assetContext, spec, schedule))
+            .collect(Collectors.toList()))
+        .filter(specs -> !specs.isEmpty())
+        .collect(Collectors.toList());
+    processProfiles(assetContext, processingProfiles);
+    if (schedule != Schedule.DEFERRED) {
+      // a rendition of the same name may be generated eagerly by another profile
+      removeOutdatedLazyRenditions(assetContext, getRenditionSpecs(assetContext, processingProfilePaths,
+          spec -> spec.isLazy() && !eagerNames.contains(spec.getName())));
+    }
+    return deferred;
+  }
+
+  /**
+   * Generates the lazy rendition of the Processing Profiles applied to the asset on its first request, rendered as
+   * any other rendition.
+   *
+   * @return {@code false} when no lazy rendition of that name applies to the asset
+   */
+  boolean generateLazyRendition(Resource assetResource, RenditionWriteBatch writeBatch, String renditionName) {
+    RenderResources runResources = acquireResources();
+    try {
+      AssetContext assetContext = createAssetContext(runResources, assetResource, writeBatch, false);
+      List<List<RenditionSpec>> processingProfiles = getRenditionSpecs(assetContext,
+          processingProfileIndex.getProcessingProfilePathsToApply(assetResource),
+          isLazyRendition(renditionName, assetContext.getAsset().getMimeType()));
+      if (processingProfiles.isEmpty()) {
+        return false;
+      }
+      processProfiles(assetContext, processingProfiles);
+      return true;
+    } finally {
+      runResources.release();
+    }
+  }
+
+  /**
+   * Tells whether a lazy rendition of that name is declared by the Processing Profiles applied to the asset, without
+   * rendering anything.
+   */
+  boolean isLazyRendition(Resource assetResource, String renditionName) {
+    Asset asset = assetResource.adaptTo(Asset.class);
+    if (asset == null) {
+      return false;
+    }
+    return processingProfileIndex.getProcessingProfilePathsToApply(assetResource).stream()
+        .map(profilePath -> processingProfileRegistry.getRenditionSpecs(profilePath,
+            assetResource.getResourceResolver()))
+        .flatMap(List::stream)
+        .anyMatch(isLazyRendition(renditionName, asset.getMimeType()));
+  }
+
+  private static Predicate<RenditionSpec> isLazyRendition(String renditionName, String mimeType) {
+    return spec -> spec.isLazy() && spec.getName().equals(renditionName) && spec.accepts(mimeType);
+  }
+
+  /**
+   * Resources of the current configuration, held by the run until it releases them.
+   */
+  private RenderResources acquireResources() {
+    while (true) {
+      RenderResources current = resources;
+      if (current.acquire()) {
+        return current;
+      }
+      if (current == resources) {
+        throw new IllegalStateException("Rendition generator is deactivated.");
+      }
+    }
+  }
+
+  private static AssetContext createAssetContext(RenderResources runResources, Resource assetResource,
+      RenditionWriteBatch writeBatch, boolean force) {
+    Asset asset = Objects.requireNonNull(assetResource.adaptTo(Asset.class));
+    Config config = runResources.getConfig();
+    return new AssetContext(runResources, asset, assetResource.getResourceResolver(), writeBatch,
+        RenditionFingerprint.forAsset(asset), force,
+        runResources.getPixelBudget().isEnabled() || config.upscale_policy() != UpscalePolicy.RENDER
+            ? getOriginalSize(asset)
+            : null,
+        runResources.getRenderSupervisor() != null ? new RenditionTimeouts(assetResource) : null,
+        config.deadline_assetSeconds() > 0
+            ? System.nanoTime() + TimeUnit.SECONDS.toNanos(config.deadline_assetSeconds())
+            : 0);
+  }
+
+  /**
+   * Renditions of the Processing Profiles matching the filter, one list per profile that has any.
+   */
+  private List<List<RenditionSpec>> getRenditionSpecs(AssetContext assetContext, Set<String> processingProfilePaths,
+      Predicate<RenditionSpec> filter) {
+    return processingProfilePaths.stream()
+        .map(profilePath -> processingProfileRegistry.getRenditionSpecs(profilePath,
+            assetContext.getResourceResolver()))
+        .map(specs -> specs.stream().filter(filter).collect(Collectors.toList()))
+        .filter(specs -> !specs.isEmpty())
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Removes lazy renditions not rendered from the current original, changes are left to the write batch. Renditions
+   * of an original that could not be identified are kept, as it is not known whether it changed.
+   */
+  private void removeOutdatedLazyRenditions(AssetContext assetContext, List<List<RenditionSpec>> processingProfiles) {
+    Asset asset = assetContext.getAsset();
+    processingProfiles.stream()
+        .flatMap(List::stream)
+        .filter(spec -> asset.getRendition(spec.getName()) != null)
+        .filter(spec -> assetContext.getFingerprint().of(spec) != null)
+        .filter(spec -> !assetContext.getFingerprint().isUpToDate(asset, spec))
+        .map(RenditionSpec::getName)
+        .distinct()
+        .forEach(renditionName -> {
+          log.debug("Removing lazy rendition {} of {}, it was not rendered from the current original.",
+              renditionName, asset.getPath());
+          asset.removeRendition(renditionName);
+        });
+  }
+
+  private static boolean isScheduled(AssetContext assetContext, RenditionSpec spec, Schedule schedule) {
+    int earlyMaxSize = assetContext.getConfig().schedule_earlyMaxSize();
+    switch (schedule) {
+      case EARLY:
+        return spec.isEarly(earlyMaxSize);
+      case DEFERRED:
+        return !spec.isEarly(earlyMaxSize);
+      default:
+        return true;
+    }
+  }
+
+  private void processProfiles(AssetContext assetContext, List<List<RenditionSpec>> processingProfiles) {
+    // renditions are saved together with their metadata by the write batch
+    assetContext.getAsset().setBatchMode(true);
+
+    List<List<RenditionGroup>> waves = getRenditionWaves(assetContext, processingProfiles);
+    for (int i = 0; i < waves.size(); i++) {
+      processWave(assetContext, waves.get(i));
+      if (isRenderedUpFront(assetContext) && i < waves.size() - 1) {
+        // intermediates of the next wave are read by detached resolvers, which only see persisted content
+        assetContext.getWriteBatch().commit();
+      }
+    }
+  }
+
+  /**
+   * Groups renditions of all profiles applicable to the asset mime type into waves, so that every rendition is
+   * rendered after the rendition it is derived from. Without cascade all renditions belong to the first wave.
+   * Renditions of overlapping profiles that render the same binary share a group and are rendered once. Renditions
+   * not smaller than the original are handled by the upscale policy. Groups of a wave are ordered by the priority and
+   * size of their renditions, so that small renditions the authoring UI waits for are rendered first.
+   */
+  private List<List<RenditionGroup>> getRenditionWaves(AssetContext assetContext,
+      List<List<RenditionSpec>> processingProfiles) {
+    String mimeType = assetContext.getAsset().getMimeType();
+    List<List<RenditionGroup>> waves = new ArrayList<>();
+    Map<String, RenditionGroup> groups = new HashMap<>();
+    int skipped = 0;
+    for (List<RenditionSpec> profile : processingProfiles) {
+      Map<Boolean, List<RenditionSpec>> accepted = profile.stream()
+          .collect(Collectors.partitioningBy(rendition -> rendition.accepts(mimeType)));
+      List<RenditionSpec> renditions = accepted.get(true);
+      accepted.get(false).forEach(metrics::recordSkipped);
+      skipped += accepted.get(false).size();
+      Map<String, Integer> levels = new HashMap<>();
+      getRenditionSteps(assetContext, renditions).forEach(step -> {
+        RenditionSpec rendition = step.getRendition();
+        UpscalePolicy upscalePolicy = isUpscaled(assetContext, rendition)
+            ? assetContext.getConfig().upscale_policy()
+            : UpscalePolicy.RENDER;
+        if (upscalePolicy == UpscalePolicy.SKIP) {
+          log.debug("Profile ({}) Rendition ({}) Skipped, not smaller than the original.", rendition.getProfileName(),
+              rendition.getName());
+          metrics.recordSkipped(rendition);
+          return;
+        }
+        boolean copyOfOriginal = upscalePolicy == UpscalePolicy.COPY
+            && StringUtils.equalsIgnoreCase(rendition.getMimeType(), mimeType);
+        String groupKey = getGroupKey(rendition, upscalePolicy, copyOfOriginal);
+        RenditionGroup group = groups.get(groupKey);
+        if (group == null) {
+          int level = Optional.ofNullable(step.getSourceRenditionName())
+              .filter(sourceName -> !copyOfOriginal)
+              .map(levels::get)
+              .map(sourceLevel -> sourceLevel + 1)
+              .orElse(0);
+          group = new RenditionGroup(step, level, copyOfOriginal);
+          groups.put(groupKey, group);
+          while (waves.size() <= level) {
+            waves.add(new ArrayList<>());
+          }
+          waves.get(level).add(group);
+        } else {
+          log.debug("Profile ({}) Rendition ({}) Rendered once with {}.", rendition.getProfileName(),
+              rendition.getName(), group.getStep().getRendition().getName());
+        }
+        group.add(rendition);
+        // renditions derived from a shared one wait for the group it is stored by
+        levels.put(rendition.getName(), group.getLevel());
+      });
+    }
+    if (skipped > 0) {
+      log.info("Skipped {} renditions of {} not applicable to mime type {}.", skipped,
+          assetContext.getAsset().getPath(), mimeType);
+    }
+    waves.forEach(wave -> wave.sort(Comparator.comparing(group -> group.getStep().getRendition(),
+        RenditionSpec.SCHEDULE_ORDER)));
+    return waves;
+  }
+
+  /**
+   * Whether the box of the rendition is not smaller than the original, so rendering would not resample it.
+   */
+  private static boolean isUpscaled(AssetContext assetContext, RenditionSpec rendition) {
+    Dimension originalSize = assetContext.getOriginalSize();
+    return originalSize != null && rendition.getWid() >= originalSize.width
+        && rendition.getHei() >= originalSize.height;
+  }
+
+  /**
+   * Renditions with the same key are rendered once. Renditions not resampled have the size of the original whatever
+   * their box, so apart from the render policy they share the key with those differing only in the box.
+   */
+  private static String getGroupKey(RenditionSpec rendition, UpscalePolicy upscalePolicy, boolean copyOfOriginal) {
+    if (copyOfOriginal) {
+      return "original";
+    }
+    return upscalePolicy == UpscalePolicy.RENDER ? rendition.getRenderKey() : rendition.getFullSizeRenderKey();
+  }
+
+  private static List<RenditionCascade.Step> getRenditionSteps(AssetContext assetContext,
+      List<RenditionSpec> renditions) {
+    Config config = assetContext.getConfig();
+    if (config.cascade_enabled()) {
+      return new RenditionCascade(config.cascade_minSourceQuality()).plan(renditions);
+    }
+    return renditions.stream()
+        .map(RenditionCascade.Step::fromOriginal)
+        .collect(Collectors.toList());
+  }
+
+  private void processWave(AssetContext assetContext, List<RenditionGroup> wave) {
+    List<NamedRenditionTemplate> templates = new ArrayList<>();
+    for (RenditionGroup group : wave) {
+      List<RenditionSpec> renditions = group.getRenditions().stream()
+          .filter(rendition -> assetContext.isForce() || !isUpToDate(assetContext, rendition))
+          .collect(Collectors.toList());
+      if (group.isCopyOfOriginal()) {
+        storeOriginalCopies(assetContext, renditions);
+      } else if (!renditions.isEmpty()) {
+        Optional.ofNullable(createRenditionTemplate(assetContext, group.getStep(), renditions))
+            .ifPresent(templates::add);
+      }
+    }
+    if (isRenderedUpFront(assetContext)) {
+      renderConcurrently(templates, assetContext);
+    }
+    for (NamedRenditionTemplate template : templates) {
+      try {
+        processRendition(assetContext, template);
+      } finally {
+        template.release();
+      }
+    }
+  }
+
+  /**
+   * Whether templates are rendered up front by detached resource resolvers, on the render pool or supervised by a
+   * deadline, instead of lazily on the workflow thread.
+   */
+  private static boolean isRenderedUpFront(AssetContext assetContext) {
+    RenderResources runResources = assetContext.getResources();
+    return runResources.getRenderExecutor().isParallel() || runResources.getRenderSupervisor() != null;
+  }
+
+  private boolean isUpToDate(AssetContext assetContext, RenditionSpec rendition) {
+    boolean upToDate = assetContext.getFingerprint().isUpToDate(assetContext.getAsset(), rendition);
+    if (upToDate) {
+      metrics.recordSkipped(rendition);
+      log.debug("Profile ({}) Rendition ({}) Skipped, original and spec unchanged.", rendition.getProfileName(),
+          rendition.getName());
+    }
+    return upToDate;
+  }
+
+  /**
+   * Renders templates on the render pool, each one with its own resource resolver. Templates that could not be
+   * rendered up front are rendered when applied on the workflow thread. Queue time is measured from the submission
+   * of the wave until a worker starts rendering. With a deadline configured the templates are rendered up front also
+   * by a single render thread, so that every render is supervised.
+   */
+  private void renderConcurrently(List<NamedRenditionTemplate> templates, AssetContext assetContext) {
+    List<ResourceResolver> workerResolvers = new ArrayList<>();
+    // resolvers of abandoned renders are closed by the render once it returns
+    Set<ResourceResolver> abandoned = ConcurrentHashMap.newKeySet();
+    try {
+      List<Runnable> tasks = new ArrayList<>();
+      long submitted = System.nanoTime();
+      for (NamedRenditionTemplate template : templates) {
+        ResourceResolver workerResolver = assetContext.getResourceResolver().clone(null);
+        workerResolvers.add(workerResolver);
+        tasks.add(() -> {
+          metrics.record(RenditionMetrics.Stage.QUEUE, template.getSpec(), System.nanoTime() - submitted);
+          if (assetContext.getResources().getRenderSupervisor() == null) {
+            renderAdmitted(assetContext, template, workerResolver);
+          } else if (!renderWithDeadline(assetContext, template, workerResolver)) {
+            abandoned.add(workerResolver);
+            metrics.recordAbandoned(template.getSpec());
+          }
+        });
+      }
+      assetContext.getResources().getRenderExecutor().runAll(tasks);
+    } catch (LoginException e) {
+      log.error("Could not obtain resource resolver for rendering, rendering sequentially.", e);
+    } finally {
+      workerResolvers.stream()
+          .filter(workerResolver -> !abandoned.contains(workerResolver))
+          .forEach(ResourceResolver::close);
+    }
+  }
+
+  private void renderAdmitted(AssetContext assetContext, NamedRenditionTemplate template,
+      ResourceResolver resourceResolver) {
+    try (PixelBudget.Admission admission = admit(assetContext, template)) {
+      template.render(resourceResolver);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.warn("Interrupted while waiting for memory to render {}.", template.getRenditionName());
+    }
+  }
+
+  /**
+   * Renders the template on the render supervisor until the deadline of the rendition or of the asset, whichever
+   * comes first. A render exceeding it is interrupted and abandoned, it keeps its memory admission until it returns.
+   *
+   * @return {@code false} when the render was abandoned and is left to close the resource resolver
+   */
+  private boolean renderWithDeadline(AssetContext assetContext, NamedRenditionTemplate template,
+      ResourceResolver resourceResolver) {
+    Config config = assetContext.getConfig();
+    long timeout = config.deadline_renditionSeconds() > 0
+        ? TimeUnit.SECONDS.toNanos(config.deadline_renditionSeconds())
+        : Long.MAX_VALUE;
+    if (assetContext.getDeadline() != 0) {
+      timeout = Math.min(timeout, assetContext.getDeadline() - System.nanoTime());
+    }
+    if (timeout <= 0) {
+      // the asset ran out of time before the rendition was started
+      template.abandon();
+      return true;
+    }
+    return assetContext.getResources().getRenderSupervisor().run(() -> {
+      try {
+        // a render abandoned while waiting for a supervised thread only closes its resource resolver
+        if (!template.isTimedOut()) {
+          renderAdmitted(assetContext, template, resourceResolver);
+        }
+      } finally {
+        if (!template.finish()) {
+          resourceResolver.close();
+        }
+      }
+    }, timeout, template::abandon);
+  }
+
+  private void processRendition(AssetContext assetContext, NamedRenditionTemplate renditionTemplate) {
+    RenditionSpec rendition = renditionTemplate.getSpec();
+    String profileName = rendition.getProfileName();
+    if (renditionTemplate.isTimedOut()) {
+      recordTimeout(assetContext, renditionTemplate);
+      return;
+    }
+    log.debug("Profile ({}) Rendition ({}) Starting.", profileName, rendition.getName());
+    List<Rendition> renditions;
+    // templates rendered up front were admitted by their render task
+    try (PixelBudget.Admission admission = renditionTemplate.isPrerendered()
+        ? null
+        : admit(assetContext, renditionTemplate)) {
+      renditions = renditionMaker.generateRenditions(assetContext.getAsset(), renditionTemplate);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.warn("Interrupted while waiting for memory to render {}.", rendition.getName());
+      return;
+    }
+    log.debug("Profile ({}) Rendition ({}) Rendition created.", profileName, rendition.getName());
+    metrics.record(RenditionMetrics.Stage.RENDER, rendition, renditionTemplate.getRenderNanos());
+    metrics.record(RenditionMetrics.Stage.STORE, rendition, renditionTemplate.getStoreNanos());
+    if (renditionTemplate.getCacheKey() != null) {
+      metrics.recordCache(rendition, renditionTemplate.isCacheHit());
+    }
+    updateRenditionMetadata(assetContext, renditions, renditionTemplate);
+    log.debug("Profile ({}) Rendition ({}) Done.", profileName, rendition.getName());
+  }
+
+  /**
+   * Marks the renditions of the timed out template on the asset, so that later runs handle them by the timeout
+   * policy. Renditions of originals that could not be identified are not marked.
+   */
+  private void recordTimeout(AssetContext assetContext, NamedRenditionTemplate renditionTemplate) {
+    log.warn("Rendition {} of {} timed out, rendering with {} from {} was cancelled.",
+        renditionTemplate.getRenditionName(), assetContext.getAsset().getPath(),
+        Optional.ofNullable(renditionTemplate.getEngine()).map(RenderEngine::getName).orElse(null),
+        renditionTemplate.getSourcePath());
+    for (RenditionSpec rendition : renditionTemplate.getRenditions()) {
+      metrics.recordError(rendition);
+      Optional.ofNullable(assetContext.getFingerprint().of(rendition))
+          .ifPresent(assetContext.getTimeouts()::add);
+    }
+  }
+
+  private void updateRenditionMetadata(AssetContext assetContext, List<Rendition> renditions,
+      NamedRenditionTemplate renditionTemplate) {
+    Optional<Rendition> optRendition = Optional.ofNullable(renditions)
+        .flatMap(list -> list.stream().filter(Objects::nonNull).findFirst());
+    RenditionSpec spec = renditionTemplate.getSpec();
+    if (optRendition.isPresent()) {
+      Rendition rendition = optRendition.get();
+      Optional<Dimension> optDimension = Optional.ofNullable(renditionTemplate.getDimension())
+          .or(() -> probeRenditionSize(rendition, spec));
+      if (optDimension.isPresent()) {
+        assetContext.getWriteBatch().addMetadata(rendition, optDimension.get(),
+            assetContext.getFingerprint().of(spec));
+        clearTimeouts(assetContext, renditionTemplate);
+        metrics.recordRendered(spec, renditionTemplate.getRenderedBytes());
+        storeCopies(assetContext, rendition, optDimension.get(), renditionTemplate);
+      } else {
+        metrics.recordError(spec);
+        log.error("Could not obtain dimensions for created rendition {}", rendition.getPath());
+      }
+    } else {
+      metrics.recordError(spec);
+      log.error("Could not obtain created rendition {}", renditionTemplate.getRenditionName());
+    }
+  }
+
+  private static void clearTimeouts(AssetContext assetContext, NamedRenditionTemplate renditionTemplate) {
+    if (assetContext.getTimeouts() != null) {
+      renditionTemplate.getRenditions().stream()
+          .map(assetContext.getFingerprint()::of)
+          .filter(Objects::nonNull)
+          .forEach(assetContext.getTimeouts()::remove);
+    }
+  }
+
+  /**
+   * Stores the rendered binary under the names of the identical renditions of other profiles, sharing its blob.
+   */
+  private void storeCopies(AssetContext assetContext, Rendition rendition, Dimension dimension,
+      NamedRenditionTemplate renditionTemplate) {
+    for (RenditionSpec copy : renditionTemplate.getCopies()) {
+      Rendition copyRendition = assetContext.getAsset()
+          .addRendition(copy.getName(), rendition.getBinary(), copy.getMimeType());
+      if (copyRendition != null) {
+        assetContext.getWriteBatch().addMetadata(copyRendition, dimension, assetContext.getFingerprint().of(copy));
+        metrics.recordRendered(copy, renditionTemplate.getRenderedBytes());
+        log.debug("Profile ({}) Rendition ({}) Stored as copy of {}.", copy.getProfileName(), copy.getName(),
+            rendition.getName());
+      } else {
+        metrics.recordError(copy);
+        log.error("Could not store rendition {} as copy of {}", copy.getName(), rendition.getPath());
+      }
+    }
+  }
+
+  /**
+   * Stores the original as renditions of its own format and size, sharing its blob instead of rendering them.
+   */
+  private void storeOriginalCopies(AssetContext assetContext, List<RenditionSpec> renditions) {
+    Asset asset = assetContext.getAsset();
+    Rendition original = asset.getOriginal();
+    for (RenditionSpec copy : renditions) {
+      Rendition copyRendition = original != null
+          ? asset.addRendition(copy.getName(), original.getBinary(), copy.getMimeType())
+          : null;
+      if (copyRendition != null) {
+        assetContext.getWriteBatch().addMetadata(copyRendition, assetContext.getOriginalSize(),
+            assetContext.getFingerprint().of(copy));
+        metrics.recordRendered(copy, original.getSize());
+        log.debug("Profile ({}) Rendition ({}) Stored as copy of the original.", copy.getProfileName(),
+            copy.getName());
+      } else {
+        metrics.recordError(copy);
+        log.error("Could not store rendition {} as copy of the original of {}", copy.getName(), asset.getPath());
+      }
+    }
+  }
+
+  /**
+   * Reads the dimensions from the stored rendition, when they could not be captured while storing it.
+   */
+  private Optional<Dimension> probeRenditionSize(Rendition rendition, RenditionSpec spec) {
+    long start = System.nanoTime();
+    Optional<Dimension> dimension = WorkflowUtil.getRenditionSize(rendition);
+    metrics.record(RenditionMetrics.Stage.DIMENSION, spec, System.nanoTime() - start);
+    return dimension;
+  }
+
+  /**
+   * Path the rendition is rendered from: the asset itself, or the intermediate rendition chosen by the cascade as long
+   * as it was produced.
+   */
+  private String getSourcePath(Asset asset, RenditionCascade.Step step) {
+    return Optional.ofNullable(step.getSourceRenditionName())
+        .filter(sourceName -> asset.getRendition(sourceName) != null)
+        .map(sourceName -> asset.getPath() + RENDITIONS_PATH + sourceName)
+        .orElse(asset.getPath());
+  }
+
+  /**
+   * Template rendering the renditions of a group that are not up to date, stored under the name of the first one and
+   * copied to the others. The source is the one planned for the first rendition of the group.
+   */
+  private NamedRenditionTemplate createRenditionTemplate(AssetContext assetContext, RenditionCascade.Step step,
+      List<RenditionSpec> renditions) {
+    long start = System.nanoTime();
+    Asset asset = assetContext.getAsset();
+    RenditionSpec rendition = renditions.get(0);
+    log.debug("Profile ({}) Rendition ({}) Obtaining config.", rendition.getProfileName(), rendition.getName());
+
+    RenderResources runResources = assetContext.getResources();
+    RenderEngine engine = getRenderEngine(assetContext, rendition);
+    if (isTimedOutBefore(assetContext, rendition)) {
+      switch (runResources.getConfig().deadline_timeoutPolicy()) {
+        case SKIP:
+          log.info("Rendition {} of {} skipped, it timed out before.", rendition.getName(), asset.getPath());
+          renditions.forEach(metrics::recordSkipped);
+          return null;
+        case DEGRADE:
+          log.info("Rendition {} of {} timed out before, rendering with the {} engine.", rendition.getName(),
+              asset.getPath(), JavaRenderEngine.NAME);
+          engine = findRenderEngine(JavaRenderEngine.NAME).orElse(engine);
+          // decoded from the original, intermediates of the cascade might be missing after a timeout as well
+          step = RenditionCascade.Step.fromOriginal(rendition);
+          break;
+        default:
+          break;
+      }
+    }
+    String sourcePath = getSourcePath(asset, step);
+    String cacheKey = getCacheKey(assetContext, rendition, engine, step, sourcePath);
+    // cached renditions are only copied from the cache
+    long footprint = 0;
+    if (cacheKey == null || !runResources.getRenditionCache().contains(cacheKey)) {
+      footprint = estimateFootprint(assetContext, rendition, engine);
+    }
+    if (!runResources.getPixelBudget().fits(footprint)) {
+      switch (runResources.getConfig().admission_oversizePolicy()) {
+        case SKIP:
+          log.warn("Rendition {} of {} skipped, rendering needs about {} MB, more than the whole memory budget.",
+              rendition.getName(), asset.getPath(), footprint / (1024 * 1024));
+          renditions.forEach(metrics::recordSkipped);
+          return null;
+        case DOWNSAMPLE:
+          engine = findRenderEngine(JavaRenderEngine.NAME).orElse(engine);
+          footprint = estimateFootprint(assetContext, rendition, engine);
+          cacheKey = getCacheKey(assetContext, rendition, engine, step, sourcePath);
+          break;
+        default:
+          break;
+      }
+    }
+
+    NamedRenditionTemplate template = NamedRenditionTemplate.builder()
+        .engine(engine)
+        .footprint(footprint)
+        .spec(rendition)
+        .spoolPool(runResources.getSpoolPool())
+        .cache(runResources.getRenditionCache())
+        .cacheKey(cacheKey)
+        .copies(renditions.subList(1, renditions.size()))
+        .sourcePath(sourcePath)
+        .mimeType(rendition.getMimeType())
+        .renditionName(rendition.getName())
+        .build();
+    metrics.record(RenditionMetrics.Stage.TEMPLATE, rendition, System.nanoTime() - start);
+    return template;
+  }
+
+  /**
+   * Whether rendering the rendition from the same original timed out before. Forced runs render it as usual.
+   */
+  private static boolean isTimedOutBefore(AssetContext assetContext, RenditionSpec rendition) {
+    return assetContext.getTimeouts() != null && !assetContext.isForce()
+        && Optional.ofNullable(assetContext.getFingerprint().of(rendition))
+        .filter(assetContext.getTimeouts()::contains)
+        .isPresent();
+  }
+
+  /**
+   * Key of the rendered binary in the rendition cache, {@code null} when the cache is disabled or the original could
+   * not be identified. An intermediate source is identified by its render key, so that it matches whatever the name
+   * it is stored under, and only while it renders the same binary.
+   */
+  private static String getCacheKey(AssetContext assetContext, RenditionSpec rendition, RenderEngine engine,
+      RenditionCascade.Step step, String sourcePath) {
+    if (assetContext.getResources().getRenditionCache() == null || engine == null) {
+      return null;
+    }
+    String source = sourcePath.equals(assetContext.getAsset().getPath())
+        ? ORIGINAL_SOURCE
+        : step.getSourceRendition().getRenderKey();
+    return assetContext.getFingerprint().ofBinary(rendition, engine.getName(), source);
+  }
+
+  /**
+   * Memory needed to render the rendition, estimated from the size of the original also when it is rendered from an
+   * intermediate rendition, 0 when the size is not known.
+   */
+  private long estimateFootprint(AssetContext assetContext, RenditionSpec rendition, RenderEngine engine) {
+    Dimension originalSize = assetContext.getOriginalSize();
+    if (originalSize == null) {
+      return 0;
+    }
+    boolean subsampled = engine != null && JavaRenderEngine.NAME.equals(engine.getName());
+    return PixelBudget.estimateBytes(originalSize, rendition, subsampled);
+  }
+
+  private PixelBudget.Admission admit(AssetContext assetContext, NamedRenditionTemplate template)
+      throws InterruptedException {
+    long start = System.nanoTime();
+    PixelBudget.Admission admission = assetContext.getResources().getPixelBudget().admit(template.getFootprint());
+    metrics.record(RenditionMetrics.Stage.ADMISSION, template.getSpec(), System.nanoTime() - start);
+    return admission;
+  }
+
+  /**
+   * Dimensions of the original from the DAM metadata, or read from its header when the metadata is not extracted yet.
+   */
+  private static Dimension getOriginalSize(Asset asset) {
+    int width = NumberUtils.toInt(asset.getMetadataValue(DamConstants.TIFF_IMAGEWIDTH));
+    int height = NumberUtils.toInt(asset.getMetadataValue(DamConstants.TIFF_IMAGELENGTH));
+    if (width > 0 && height > 0) {
+      return new Dimension(width, height);
+    }
+    return Optional.ofNullable(asset.getOriginal())
+        .flatMap(WorkflowUtil::getRenditionSize)
+        .orElse(null);
+  }
+
+  /**
+   * Engine chosen by the profile of the rendition or by the configuration, Gfx when that one is not available.
+   */
+  private RenderEngine getRenderEngine(AssetContext assetContext, RenditionSpec rendition) {
+    String engineName = StringUtils.defaultIfBlank(rendition.getRenderEngine(),
+        assetContext.getConfig().render_engine());
+    return findRenderEngine(engineName)
+        .or(() -> {
+          log.warn("Render engine {} of rendition {} is not available, using {}.", engineName, rendition.getName(),
+              GfxRenderEngine.NAME);
+          return findRenderEngine(GfxRenderEngine.NAME);
+        })
+        .orElseGet(() -> {
+          log.error("No render engine available for rendition {}.", rendition.getName());
+          return null;
+        });
+  }
+
+  private Optional<RenderEngine> findRenderEngine(String engineName) {
+    return Optional.ofNullable(renderEngines).stream()
+        .flatMap(List::stream)
+        .filter(engine -> StringUtils.equals(engine.getName(), engineName))
+        .findFirst();
+  }
+
+  @ObjectClassDefinition(name = "Local Rendition Generator",
+      description = "Generates renditions defined in Processing Profiles as AEM as a Cloud Service would.")
+  public @interface Config {
+
+    @AttributeDefinition(name = "Cascade renditions",
+        description = "Render the largest rendition of a profile from the original and every smaller one from the "
+            + "nearest larger rendition already produced.")
+    boolean cascade_enabled() default false;
+
+    @AttributeDefinition(name = "Cascade minimal source quality",
+        description = "Lowest JPEG quality of a rendition that may still be used as a source of smaller renditions.")
+    int cascade_minSourceQuality() default 90;
+
+    @AttributeDefinition(name = "Render threads",
+        description = "Number of renditions rendered concurrently, shared by all workflow threads. "
+            + "1 renders sequentially on the workflow thread.")
+    int render_threads() default 1;
+
+    @AttributeDefinition(name = "Use virtual threads",
+        description = "Render on virtual threads when the runtime supports them (Java 21+), still bounded by the "
+            + "number of render threads.")
+    boolean render_virtualThreads() default false;
+
+    @AttributeDefinition(name = "Render engine",
+        description = "Engine rendering renditions of profiles that do not choose one: gfx renders with AEM Gfx, "
+            + "java decodes the source subsampled to the rendition size, which is faster for large originals.")
+    String render_engine() default GfxRenderEngine.NAME;
+
+    @AttributeDefinition(name = "Memory budget (MB)",
+        description = "Memory of decoded images shared by all renders, a render waits until its estimated footprint "
+            + "is available. 0 disables the budget.")
+    int admission_budgetMb() default 0;
+
+    @AttributeDefinition(name = "Oversize policy",
+        description = "Handling of renders exceeding the whole budget: QUEUE renders them alone, DOWNSAMPLE renders "
+            + "them with the Java engine decoding the source subsampled, SKIP does not render them.")
+    PixelBudget.OversizePolicy admission_oversizePolicy() default PixelBudget.OversizePolicy.QUEUE;
+
+    @AttributeDefinition(name = "Spool threshold (KB)",
+        description = "Renditions rendered up front by the render threads wait for being stored in a pooled buffer "
+            + "up to this size, larger ones are spooled to a temporary file.")
+    int spool_thresholdKb() default 1024;
+
+    @AttributeDefinition(name = "Spool directory",
+        description = "Directory of spooled renditions, the system temporary directory when empty.")
+    String spool_directory() default "";
+
+    @AttributeDefinition(name = "Upscale policy",
+        description = "Handling of renditions whose box is not smaller than the original, which would only be "
+            + "re-encoded: RENDER renders each of them, SKIP does not generate them, COPY stores the original when "
+            + "the format is the same and reuses otherwise, REUSE renders them once per format and quality and "
+            + "stores the result under every name.")
+    UpscalePolicy upscale_policy() default UpscalePolicy.RENDER;
+
+    @AttributeDefinition(name = "Cache size (MB)",
+        description = "Size of the local disk cache of rendered renditions, keyed by the content of the original, so "
+            + "duplicates of an original uploaded to other paths are not rendered again. 0 disables the cache.")
+    int cache_sizeMb() default 0;
+
+    @AttributeDefinition(name = "Cache directory",
+        description = "Directory of the rendition cache, local-renditions-cache in the system temporary directory "
+            + "when empty.")
+    String cache_directory() default "";
+
+    @AttributeDefinition(name = "Rendition deadline (seconds)",
+        description = "Time a single render may take, a render exceeding it is cancelled and the rendition is marked "
+            + "as timed out on the asset. 0 disables the deadline.")
+    int deadline_renditionSeconds() default 0;
+
+    @AttributeDefinition(name = "Asset deadline (seconds)",
+        description = "Time all renders of an asset may take together, renditions not finished by then are "
+            + "cancelled and marked as timed out on the asset. 0 disables the deadline.")
+    int deadline_assetSeconds() default 0;
+
+    @AttributeDefinition(name = "Supervised render threads",
+        description = "Threads running renders with a deadline, at least the number of render threads. A cancelled "
+            + "render holds its thread until it returns, renders wait for a free thread within their deadline.")
+    int deadline_threads() default 4;
+
+    @AttributeDefinition(name = "Timeout policy",
+        description = "Handling of renditions that timed out in an earlier run of the same original: RETRY renders "
+            + "them as before, DEGRADE renders them from the original with the Java engine decoding it subsampled, "
+            + "SKIP does not render them until a forced run.")
+    TimeoutPolicy deadline_timeoutPolicy() default TimeoutPolicy.DEGRADE;
+
+    @AttributeDefinition(name = "Early rendition size",
+        description = "Renditions whose longer side does not exceed this size, or with a positive priority, are "
+            + "generated and committed first, the others are deferred to the Local Renditions Deferred job queue. "
+            + "A negative priority always defers the rendition. 0 generates all renditions together.")
+    int schedule_earlyMaxSize() default 0;
+  }
+
+  /**
+   * Renditions of an asset generated by a single run.
+   */
+  enum Schedule {
+
+    /**
+     * All renditions of the asset.
+     */
+    ALL,
+
+    /**
+     * Small or prioritized renditions, generated first.
+     */
+    EARLY,
+
+    /**
+     * Renditions left over by the early stage, generated with a lower priority.
+     */
+    DEFERRED
+  }
+
+  /**
+   * Handling of renditions that timed out in an earlier run.
+   */
+  enum TimeoutPolicy {
+
+    /**
+     * Render the rendition as before.
+     */
+    RETRY,
+
+    /**
+     * Render the rendition from the original with the Java engine.
+     */
+    DEGRADE,
+
+    /**
+     * Do not generate the rendition until a forced run.
+     */
+    SKIP
+  }
+
+  /**
+   * Handling of renditions whose box is not smaller than the original.
+   */
+  enum UpscalePolicy {
+
+    /**
+     * Render every rendition, re-encoding the original at its size.
+     */
+    RENDER,
+
+    /**
+     * Do not generate the rendition.
+     */
+    SKIP,
+
+    /**
+     * Store the original when the rendition has its format, reuse otherwise.
+     */
+    COPY,
+
+    /**
+     * Render once per format and quality at the size of the original and store it under every name.
+     */
+    REUSE
+  }
+
+  @Getter
+  @RequiredArgsConstructor
+  private static class AssetContext {
+
+    /**
+     * Resources of the configuration the run started with.
+     */
+    private final RenderResources resources;
+
+    private final Asset asset;
+
+    private final ResourceResolver resourceResolver;
+
+    private final RenditionWriteBatch writeBatch;
+
+    private final RenditionFingerprint fingerprint;
+
+    private final boolean force;
+
+    /**
+     * Dimensions of the original, {@code null} when unknown or not needed.
+     */
+    private final Dimension originalSize;
+
+    /**
+     * Renditions of the asset that timed out, {@code null} when no deadline is configured.
+     */
+    private final RenditionTimeouts timeouts;
+
+    /**
+     * {@link System#nanoTime()} by which all renders of the asset have to finish, 0 when there is no deadline.
+     */
+    private final long deadline;
+
+    Config getConfig() {
+      return resources.getConfig();
+    }
+  }
+
+  /**
+   * Configuration together with the pools built from it. Runs hold the resources they started with, so a changed
+   * configuration does not shut down pools still in use: the pools of replaced resources are shut down once their
+   * last run has released them, letting the renders already submitted finish.
+   */
+  @Getter
+  private static class RenderResources {
+
+    private final Config config;
+
+    private final RenderExecutor renderExecutor;
+
+    private final PixelBudget pixelBudget;
+
+    private final RenditionSpool.Pool spoolPool;
+
+    /**
+     * Renditions rendered before, {@code null} when the cache is disabled.
+     */
+    private final RenditionCache renditionCache;
+
+    /**
+     * Runs renders with a deadline, {@code null} when no deadline is configured.
+     */
+    private final RenderSupervisor renderSupervisor;
+
+    /**
+     * Runs holding the resources, plus one while they are the current ones. Shut down at 0.
+     */
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger holders = new AtomicInteger(1);
+
+    /**
+     * @param previous resources of the previous configuration, {@code null} on activation
+     */
+    RenderResources(Config config, RenderResources previous) {
+      this.config = config;
+      this.renderExecutor = RenderExecutor.create(config.render_threads(), config.render_virtualThreads());
+      this.pixelBudget = new PixelBudget(config.admission_budgetMb());
+      this.spoolPool = new RenditionSpool.Pool(config.spool_thresholdKb() * 1024, config.render_threads(),
+          StringUtils.isNotBlank(config.spool_directory()) ? Paths.get(config.spool_directory()) : null);
+      this.renditionCache = config.cache_sizeMb() > 0
+          ? createCache(config, previous != null ? previous.getRenditionCache() : null)
+          : null;
+      this.renderSupervisor = config.deadline_renditionSeconds() > 0 || config.deadline_assetSeconds() > 0
+          ? new RenderSupervisor(Math.max(config.render_threads(), config.deadline_threads()))
+          : null;
+    }
+
+    /**
+     * Cache of the configured directory. The previous cache of the same directory is kept, as a new one would remove
+     * the files it is still writing.
+     */
+    private static RenditionCache createCache(Config config, RenditionCache previous) {
+      Path directory = StringUtils.isNotBlank(config.cache_directory())
+          ? Paths.get(config.cache_directory())
+          : Paths.get(System.getProperty("java.io.tmpdir"), CACHE_DIRECTORY);
+      long maxBytes = config.cache_sizeMb() * 1024L * 1024L;
+      if (previous != null && previous.getDirectory().equals(directory)) {
+        previous.resize(maxBytes);
+        return previous;
+      }
+      return new RenditionCache(directory, maxBytes);
+    }
+
+    /**
+     * @return {@code false} when the resources were already shut down
+     */
+    boolean acquire() {
+      int current;
+      do {
+        current = holders.get();
+        if (current == 0) {
+          return false;
+        }
+      } while (!holders.compareAndSet(current, current + 1));
+      return true;
+    }
+
+    void release() {
+      if (holders.decrementAndGet() == 0) {
+        renderExecutor.close();
+        if (renderSupervisor != null) {
+          renderSupervisor.close();
+        }
+      }
+    }
+  }
+
+  /**
+   * Renditions of all profiles that render the same binary, in the order they were planned. The first one determines
+   * the source and the wave of the group.
+   */
+  @Getter
+  @RequiredArgsConstructor
+  private static class RenditionGroup {
+
+    private final RenditionCascade.Step step;
+
+    private final int level;
+
+    /**
+     * Renditions stored from the original without rendering.
+     */
+    private final boolean copyOfOriginal;
+
+    private final List<RenditionSpec> renditions = new ArrayList<>();
+
+    void add(RenditionSpec rendition) {
+      // the same rendition of overlapping profiles is stored once
+      if (renditions.stream().noneMatch(existing -> existing.getName().equals(rendition.getName()))) {
+        renditions.add(rendition);
+      }
+    }
+  }
+
+  @Getter
+  @Builder
+  private static class NamedRenditionTemplate implements RenditionTemplate {
+
+    private RenderEngine engine;
+
+    /**
+     * Estimated memory needed to render, in bytes.
+     */
+    private long footprint;
+
+    private RenditionSpec spec;
+
+    /**
+     * Renditions identical to the rendered one, stored from its binary.
+     */
+    private List<RenditionSpec> copies;
+
+    private String sourcePath;
+
+    private String renditionName;
+
+    private String mimeType;
+
+    /**
+     * Dimensions read from the header of the rendered stream, {@code null} until the rendition is applied or when the
+     * header could not be read.
+     */
+    private Dimension dimension;
+
+    private RenditionSpool.Pool spoolPool;
+
+    /**
+     * Cache the rendition is read from or stored to, {@code null} when disabled.
+     */
+    private RenditionCache cache;
+
+    /**
+     * Key of the rendition in the cache, {@code null} when it is not cached.
+     */
+    private String cacheKey;
+
+    private boolean cacheHit;
+
+    private boolean prerendered;
+
+    private RenditionSpool rendered;
+
+    /**
+     * Set when the render exceeded its deadline and was abandoned, guarded by the template.
+     */
+    @Getter(AccessLevel.NONE)
+    private boolean timedOut;
+
+    /**
+     * Set when the render up front returned, guarded by the template.
+     */
+    @Getter(AccessLevel.NONE)
+    private boolean finished;
+
+    /**
+     * Time spent rendering, including reading the rendered stream when it is rendered lazily while stored.
+     */
+    private long renderNanos;
+
+    /**
+     * Time spent storing the rendition, without waiting for a lazily rendered stream.
+     */
+    private long storeNanos;
+
+    private long renderedBytes;
+
+    /**
+     * Renders the rendition up front, so that {@link #apply(Asset)} only stores the result.
+     */
+    void render(ResourceResolver resourceResolver) {
+      if (cacheKey != null && cache.contains(cacheKey)) {
+        // stored straight from the cache when applied
+        return;
+      }
+      long start = System.nanoTime();
+      try (InputStream stream = renderStream(resourceResolver)) {
+        if (stream != null) {
+          this.rendered = spoolPool.spool(stream);
+          this.renderedBytes = rendered.getLength();
+        }
+      } catch (IOException e) {
+        log.error("Exception occurred while generating the renditon.", e);
+      }
+      this.renderNanos = System.nanoTime() - start;
+      this.prerendered = true;
+    }
+
+    @Override
+    public Rendition apply(Asset asset) {
+      return Optional.ofNullable(asset.adaptTo(Resource.class))
+          .map(Resource::getResourceResolver)
+          .map(resourceResolver -> {
+            Rendition rendition = null;
+            long start = System.nanoTime();
+            try (TimedInputStream stream = openStream(resourceResolver)) {
+              long opened = System.nanoTime();
+              if (!prerendered) {
+                this.renderNanos = opened - start;
+              }
+              if (stream != null) {
+                ImageHeaderCapturingInputStream headerStream = new ImageHeaderCapturingInputStream(stream);
+                rendition = asset.addRendition(this.renditionName, headerStream, this.mimeType);
+                this.dimension = headerStream.getDimension().orElse(null);
+                this.storeNanos = System.nanoTime() - opened - stream.getReadNanos();
+                if (!prerendered) {
+                  this.renderNanos += stream.getReadNanos();
+                  this.renderedBytes = stream.getBytes();
+                }
+              }
+            } catch (IOException e) {
+              log.error("Exception occurred while generating the renditon.", e);
+            }
+            return rendition;
+          })
+          .orElse(null);
+    }
+
+    private TimedInputStream openStream(ResourceResolver resourceResolver) throws IOException {
+      InputStream stream;
+      if (prerendered) {
+        stream = rendered != null ? rendered.openStream() : null;
+      } else {
+        stream = renderStream(resourceResolver);
+      }
+      return stream != null ? new TimedInputStream(stream) : null;
+    }
+
+    /**
+     * Rendered renditions, the first one and its copies.
+     */
+    List<RenditionSpec> getRenditions() {
+      List<RenditionSpec> renditions = new ArrayList<>();
+      renditions.add(spec);
+      renditions.addAll(copies);
+      return renditions;
+    }
+
+    synchronized boolean isTimedOut() {
+      return timedOut;
+    }
+
+    /**
+     * Abandons the render that exceeded its deadline.
+     *
+     * @return {@code false} when the render has just finished and its result can be used
+     */
+    synchronized boolean abandon() {
+      if (finished) {
+        return false;
+      }
+      this.timedOut = true;
+      return true;
+    }
+
+    /**
+     * Marks the render up front as returned and frees its result when the render was abandoned meanwhile.
+     *
+     * @return {@code false} when the render was abandoned
+     */
+    synchronized boolean finish() {
+      this.finished = true;
+      if (timedOut) {
+        release();
+        return false;
+      }
+      return true;
+    }
+
+    /**
+     * Frees the rendition rendered up front once it is stored.
+     */
+    synchronized void release() {
+      if (rendered != null) {
+        rendered.close();
+        rendered = null;
+      }
+    }
+
+    private InputStream renderStream(ResourceResolver resourceResolver) throws IOException {
+      if (cacheKey != null) {
+        InputStream cached = cache.get(cacheKey);
+        if (cached != null) {
+          this.cacheHit = true;
+          return cached;
+        }
+      }
+      InputStream rendered = engine != null ? engine.render(this.sourcePath, this.spec, resourceResolver) : null;
+      return rendered != null && cacheKey != null ? cache.caching(cacheKey, rendered) : rendered;
+    }
+  }
+}
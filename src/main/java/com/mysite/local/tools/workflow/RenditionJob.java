@@ -0,0 +1,143 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.event.jobs.consumer.JobExecutionContext;
+import org.apache.sling.event.jobs.consumer.JobExecutionResult;
+import org.apache.sling.event.jobs.consumer.JobExecutor;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+/**
+ * Generates renditions of an asset enqueued by the workflow process in asynchronous mode, or the renditions deferred
+ * by an early stage. Thread count, priority and retries are those of the Local Renditions job queue, deferred
+ * renditions are generated on the Local Renditions Deferred queue, so they do not hold up the early renditions of
+ * other assets.
+ */
+@Slf4j
+@Component(
+    service = JobExecutor.class,
+    property = {
+        Constants.SERVICE_DESCRIPTION + "=Generates local renditions of an asset",
+        Constants.SERVICE_VENDOR + "=Cognifide",
+        JobExecutor.PROPERTY_TOPICS + "=" + RenditionJob.TOPIC,
+        JobExecutor.PROPERTY_TOPICS + "=" + RenditionJob.DEFERRED_TOPIC})
+public class RenditionJob implements JobExecutor {
+
+  static final String TOPIC = "com/mysite/local/tools/renditions/render";
+
+  static final String DEFERRED_TOPIC = "com/mysite/local/tools/renditions/render/deferred";
+
+  static final String PROPERTY_PATH = "path";
+
+  static final String PROPERTY_FORCE = "force";
+
+  static final String PROPERTY_PROFILES = "profiles";
+
+  static final String PROPERTY_SCHEDULE = "schedule";
+
+  @Reference
+  private ResourceResolverFactory resourceResolverFactory;
+
+  @Reference
+  private RenditionGenerator renditionGenerator;
+
+  @Reference
+  private ProcessingProfileIndex processingProfileIndex;
+
+  @Reference
+  private AssetCoalescer assetCoalescer;
+
+  @Reference
+  private JobManager jobManager;
+
+  /**
+   * Enqueues generation of the renditions of the schedule, deferred renditions on their own queue.
+   */
+  static void enqueue(JobManager jobManager, String assetPath, boolean force, Set<String> profilePaths,
+      RenditionGenerator.Schedule schedule) {
+    Job job = jobManager.addJob(schedule == RenditionGenerator.Schedule.DEFERRED ? DEFERRED_TOPIC : TOPIC, Map.of(
+        PROPERTY_PATH, assetPath,
+        PROPERTY_FORCE, force,
+        PROPERTY_PROFILES, profilePaths.toArray(new String[0]),
+        PROPERTY_SCHEDULE, schedule.name()));
+    if (job != null) {
+      log.debug("Renditions of {} enqueued as job {} ({}).", assetPath, job.getId(), schedule);
+    } else {
+      log.error("Could not enqueue renditions of {} ({}).", assetPath, schedule);
+    }
+  }
+
+  @Override
+  public JobExecutionResult process(Job job, JobExecutionContext context) {
+    String assetPath = job.getProperty(PROPERTY_PATH, String.class);
+    boolean force = job.getProperty(PROPERTY_FORCE, Boolean.FALSE);
+    String[] profilePaths = job.getProperty(PROPERTY_PROFILES, String[].class);
+    RenditionGenerator.Schedule schedule = RenditionGenerator.Schedule.valueOf(
+        job.getProperty(PROPERTY_SCHEDULE, RenditionGenerator.Schedule.ALL.name()));
+
+    try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(
+        Map.of(ResourceResolverFactory.SUBSERVICE, RenditionGenerator.SUBSERVICE))) {
+      if (resourceResolver.getResource(assetPath) == null) {
+        return context.result().message("Asset " + assetPath + " does not exist.").cancelled();
+      }
+      AtomicBoolean saved = new AtomicBoolean(true);
+      // deferred renditions of an asset do not wait for the runs of its early renditions
+      String runKey = schedule == RenditionGenerator.Schedule.DEFERRED ? assetPath + "#deferred" : assetPath;
+      boolean ran = assetCoalescer.run(runKey, force, runForced -> {
+        resourceResolver.refresh();
+        Resource assetResource = resourceResolver.getResource(assetPath);
+        if (assetResource != null) {
+          Set<String> profiles = profilePaths != null
+              ? new LinkedHashSet<>(Arrays.asList(profilePaths))
+              : processingProfileIndex.getProcessingProfilePathsToApply(assetResource);
+          RenditionWriteBatch writeBatch = renditionGenerator.newWriteBatch(resourceResolver, 1);
+          boolean deferred = renditionGenerator.generateRenditions(assetResource, writeBatch, runForced, profiles,
+              schedule);
+          boolean committed = writeBatch.commit();
+          saved.compareAndSet(true, committed);
+          if (committed && deferred) {
+            enqueue(jobManager, assetPath, runForced, profiles, RenditionGenerator.Schedule.DEFERRED);
+          }
+        }
+      });
+      if (!ran) {
+        return context.result().message("Collapsed into the run in flight for " + assetPath + ".").succeeded();
+      }
+      // a failed commit is retried by the queue
+      return saved.get()
+          ? context.result().succeeded()
+          : context.result().message("Renditions of " + assetPath + " could not be saved.").failed();
+    } catch (LoginException e) {
+      log.error("Could not obtain the {} service resource resolver.", RenditionGenerator.SUBSERVICE, e);
+      return context.result().message("Service user is not available.").cancelled();
+    }
+  }
+}
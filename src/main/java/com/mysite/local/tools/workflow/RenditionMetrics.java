@@ -0,0 +1,223 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.DynamicMBean;
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+import lombok.Value;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+/**
+ * Records timings of the rendition pipeline stages and counts of rendered, skipped, failed, abandoned and cached
+ * renditions.
+ * Everything is published to the Sling Commons Metrics registry, aggregated per stage and tagged per profile, rendition and
+ * format, and summarized with percentiles by this MBean.
+ */
+@Component(
+    service = {RenditionMetrics.class, DynamicMBean.class},
+    property = {
+        Constants.SERVICE_DESCRIPTION + "=Metrics of local renditions",
+        Constants.SERVICE_VENDOR + "=Cognifide",
+        "jmx.objectname=com.mysite.local.tools:type=LocalRenditions,name=Metrics"})
+public class RenditionMetrics extends StandardMBean implements RenditionMetricsMBean {
+
+  static final String PREFIX = "local-renditions.";
+
+  private static final String[] STAGE_ITEMS = {"stage", "count", "meanMs", "p50Ms", "p95Ms", "p99Ms", "maxMs"};
+
+  private static final String[] RENDITION_ITEMS = {"profile", "rendition", "format", "rendered", "skipped", "errors",
+      "abandoned", "cacheHits", "cacheMisses", "bytes", "renderP95Ms"};
+
+  private final Map<Stage, LatencyStats> stages = new ConcurrentHashMap<>();
+
+  private final Map<RenditionKey, RenditionStats> renditions = new ConcurrentHashMap<>();
+
+  @Reference
+  private MetricsService metricsService;
+
+  public RenditionMetrics() throws NotCompliantMBeanException {
+    super(RenditionMetricsMBean.class);
+  }
+
+  /**
+   * Records the duration of a stage, tagged by the rendition unless it is {@code null}.
+   */
+  void record(Stage stage, RenditionSpec spec, long nanos) {
+    stages.computeIfAbsent(stage, key -> new LatencyStats()).record(nanos);
+    metricsService.timer(PREFIX + stage.getName()).update(nanos, TimeUnit.NANOSECONDS);
+    if (spec != null) {
+      metricsService.timer(PREFIX + stage.getName() + tags(spec)).update(nanos, TimeUnit.NANOSECONDS);
+      if (stage == Stage.RENDER) {
+        getRenditionStats(spec).render.record(nanos);
+      }
+    }
+  }
+
+  void recordRendered(RenditionSpec spec, long bytes) {
+    RenditionStats stats = getRenditionStats(spec);
+    stats.rendered.increment();
+    stats.bytes.add(bytes);
+    metricsService.histogram(PREFIX + "bytes" + tags(spec)).update(bytes);
+  }
+
+  void recordSkipped(RenditionSpec spec) {
+    getRenditionStats(spec).skipped.increment();
+    metricsService.counter(PREFIX + "skipped" + tags(spec)).increment();
+  }
+
+  void recordError(RenditionSpec spec) {
+    getRenditionStats(spec).errors.increment();
+    metricsService.counter(PREFIX + "errors" + tags(spec)).increment();
+  }
+
+  /**
+   * Records a render cancelled by its deadline, which keeps its supervised thread until it returns.
+   */
+  void recordAbandoned(RenditionSpec spec) {
+    getRenditionStats(spec).abandoned.increment();
+    metricsService.counter(PREFIX + "abandoned" + tags(spec)).increment();
+  }
+
+  /**
+   * Records whether the rendition was found in the rendition cache.
+   */
+  void recordCache(RenditionSpec spec, boolean hit) {
+    RenditionStats stats = getRenditionStats(spec);
+    (hit ? stats.cacheHits : stats.cacheMisses).increment();
+    metricsService.counter(PREFIX + (hit ? "cacheHits" : "cacheMisses") + tags(spec)).increment();
+  }
+
+  @Override
+  public TabularData getStages() throws OpenDataException {
+    OpenType<?>[] types = {SimpleType.STRING, SimpleType.LONG, SimpleType.DOUBLE, SimpleType.DOUBLE,
+        SimpleType.DOUBLE, SimpleType.DOUBLE, SimpleType.DOUBLE};
+    CompositeType rowType = new CompositeType("stage", "Pipeline stage", STAGE_ITEMS, STAGE_ITEMS, types);
+    TabularDataSupport table = new TabularDataSupport(
+        new TabularType("stages", "Pipeline stages", rowType, new String[]{"stage"}));
+    for (Stage stage : Stage.values()) {
+      LatencyStats stats = stages.get(stage);
+      if (stats != null) {
+        table.put(new CompositeDataSupport(rowType, STAGE_ITEMS, new Object[]{stage.getName(), stats.getCount(),
+            stats.getMeanMillis(), stats.getPercentileMillis(0.5), stats.getPercentileMillis(0.95),
+            stats.getPercentileMillis(0.99), stats.getMaxMillis()}));
+      }
+    }
+    return table;
+  }
+
+  @Override
+  public TabularData getRenditions() throws OpenDataException {
+    OpenType<?>[] types = {SimpleType.STRING, SimpleType.STRING, SimpleType.STRING, SimpleType.LONG,
+        SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG,
+        SimpleType.DOUBLE};
+    CompositeType rowType = new CompositeType("rendition", "Rendition of a profile", RENDITION_ITEMS,
+        RENDITION_ITEMS, types);
+    TabularDataSupport table = new TabularDataSupport(new TabularType("renditions", "Renditions", rowType,
+        new String[]{"profile", "rendition", "format"}));
+    for (Map.Entry<RenditionKey, RenditionStats> entry : renditions.entrySet()) {
+      RenditionKey key = entry.getKey();
+      RenditionStats stats = entry.getValue();
+      table.put(new CompositeDataSupport(rowType, RENDITION_ITEMS, new Object[]{key.getProfile(),
+          key.getRendition(), key.getFormat(), stats.rendered.sum(), stats.skipped.sum(), stats.errors.sum(),
+          stats.abandoned.sum(), stats.cacheHits.sum(), stats.cacheMisses.sum(), stats.bytes.sum(),
+          stats.render.getPercentileMillis(0.95)}));
+    }
+    return table;
+  }
+
+  @Override
+  public void reset() {
+    stages.clear();
+    renditions.clear();
+  }
+
+  private RenditionStats getRenditionStats(RenditionSpec spec) {
+    return renditions.computeIfAbsent(new RenditionKey(spec.getProfileName(), spec.getName(), format(spec)),
+        key -> new RenditionStats());
+  }
+
+  /**
+   * Metric name suffix of the profile, rendition and format, with dots of the names replaced as dots separate the
+   * segments of metric names.
+   */
+  private static String tags(RenditionSpec spec) {
+    return "." + segment(spec.getProfileName()) + "." + segment(spec.getName()) + "." + segment(format(spec));
+  }
+
+  private static String segment(String name) {
+    return StringUtils.replaceChars(StringUtils.defaultIfEmpty(name, "unknown"), '.', '_');
+  }
+
+  private static String format(RenditionSpec spec) {
+    return StringUtils.substringAfter(spec.getMimeType(), "/");
+  }
+
+  enum Stage {
+    TEMPLATE, QUEUE, ADMISSION, RENDER, STORE, DIMENSION, COMMIT;
+
+    String getName() {
+      return name().toLowerCase(Locale.ROOT);
+    }
+  }
+
+  @Value
+  private static class RenditionKey {
+
+    String profile;
+
+    String rendition;
+
+    String format;
+  }
+
+  private static class RenditionStats {
+
+    private final LongAdder rendered = new LongAdder();
+
+    private final LongAdder skipped = new LongAdder();
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LongAdder abandoned = new LongAdder();
+
+    private final LongAdder cacheHits = new LongAdder();
+
+    private final LongAdder cacheMisses = new LongAdder();
+
+    private final LongAdder bytes = new LongAdder();
+
+    private final LatencyStats render = new LatencyStats();
+  }
+}
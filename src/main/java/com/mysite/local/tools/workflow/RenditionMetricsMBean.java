@@ -0,0 +1,42 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.TabularData;
+
+/**
+ * Timings and counters of local rendition generation.
+ */
+public interface RenditionMetricsMBean {
+
+  /**
+   * Latency of every stage of the pipeline in milliseconds: count, mean, 50th, 95th and 99th percentile and maximum.
+   */
+  TabularData getStages() throws OpenDataException;
+
+  /**
+   * Rendered, skipped, failed and abandoned renditions with encoded bytes and render latency per profile, rendition
+   * and format.
+   */
+  TabularData getRenditions() throws OpenDataException;
+
+  /**
+   * Clears all statistics.
+   */
+  void reset();
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Immutable rendition of a Processing Profile with everything resolved that is needed to render it.
+ */
+@Slf4j
+@Getter
+@Builder
+@EqualsAndHashCode
+@ToString
+class RenditionSpec {
+
+  /**
+   * Order renditions of an asset are generated in: by descending priority, then the smaller ones first.
+   */
+  static final Comparator<RenditionSpec> SCHEDULE_ORDER = Comparator.comparingInt(RenditionSpec::getPriority)
+      .reversed()
+      .thenComparingLong(RenditionSpec::getArea);
+
+  private final String profileName;
+
+  private final String name;
+
+  private final String mimeType;
+
+  private final int wid;
+
+  private final int hei;
+
+  private final int qlt;
+
+  /**
+   * Scheduling priority, 0 when the profile does not set any.
+   */
+  private final int priority;
+
+  /**
+   * Whether the rendition is generated on its first request instead of by the workflow.
+   */
+  private final boolean lazy;
+
+  /**
+   * Whether a JPEG rendition is encoded progressively.
+   */
+  private final boolean progressive;
+
+  /**
+   * Whether a PNG rendition is reduced to a palette.
+   */
+  private final boolean palette;
+
+  /**
+   * Deflate level of a PNG rendition, -1 for the encoder default.
+   */
+  @Builder.Default
+  private final int compressionLevel = -1;
+
+  /**
+   * Name of the {@link RenderEngine} rendering the rendition, {@code null} for the configured default.
+   */
+  private final String renderEngine;
+
+  /**
+   * Gfx instructions of the rendition, in the order they are applied to the plan.
+   */
+  private final Map<String, Object> instructions;
+
+  /**
+   * Hash of everything that affects the rendered output.
+   */
+  private final String fingerprint;
+
+  /**
+   * Hash of everything that affects the rendered binary, equal for renditions that differ only in their name.
+   */
+  private final String renderKey;
+
+  /**
+   * Render key without the box, shared by renditions that are not resampled because they are not smaller than the
+   * original.
+   */
+  private final String fullSizeRenderKey;
+
+  /**
+   * Mime types of originals the rendition is generated for, {@code null} matches all of them.
+   */
+  @EqualsAndHashCode.Exclude
+  private final Pattern includeMimeTypes;
+
+  /**
+   * Mime types of originals the rendition is not generated for, {@code null} matches none of them.
+   */
+  @EqualsAndHashCode.Exclude
+  private final Pattern excludeMimeTypes;
+
+  /**
+   * Compiles the rendition of the profile. The output format is the {@code fmt} of the rendition, or the format of its
+   * name when {@code fmt} is not a known output format. The quality is mapped to the encoding of the format: the JPEG
+   * and WebP quality, or the number of palette colors of GIF and palette PNG renditions. The alpha channel is kept by
+   * the render engines when the format supports it and the source has one.
+   */
+  static RenditionSpec compile(ProcessingProfile profile, ProcessingProfile.Rendition rendition,
+      UnaryOperator<String> mimeTypeResolver) {
+    String nameMimeType = mimeTypeResolver.apply(rendition.getName());
+    OutputFormat format = OutputFormat.of(rendition.getFmt())
+        .or(() -> OutputFormat.of(nameMimeType))
+        .orElse(null);
+    String mimeType = format != null ? format.getMimeType() : nameMimeType;
+    int width = rendition.getWid().intValue();
+    int height = rendition.getHei().intValue();
+    int quality = rendition.getQlt().intValue();
+    boolean progressive = format == OutputFormat.JPEG && (Boolean.TRUE.equals(rendition.getProgressive())
+        || "pjpeg".equalsIgnoreCase(StringUtils.trim(rendition.getFmt())));
+    boolean palette = format == OutputFormat.PNG && (Boolean.TRUE.equals(rendition.getPalette())
+        || "png8".equalsIgnoreCase(StringUtils.trim(rendition.getFmt())));
+    int compressionLevel = format == OutputFormat.PNG && rendition.getCompressionLevel() != null
+        ? Math.max(0, Math.min(9, rendition.getCompressionLevel().intValue()))
+        : -1;
+
+    Map<String, Object> instructions = new LinkedHashMap<>();
+    instructions.put("wid", width);
+    instructions.put("hei", height);
+    instructions.put("fit", "constrain,0");
+    instructions.put("rszfast", quality <= 90);
+    String fmt = format != null ? format.getGfxName() : StringUtils.substringAfter(mimeType, "/");
+    if (format == OutputFormat.JPEG || format == OutputFormat.WEBP) {
+      instructions.put("qlt", quality);
+    } else if (format == OutputFormat.GIF || palette) {
+      instructions.put("quantize", "adaptive,diffuse," + getPaletteColors(quality));
+    }
+    if (progressive) {
+      fmt = "pjpeg";
+    } else if (palette) {
+      fmt = "png8";
+    }
+    instructions.put("fmt", fmt);
+
+    Map<String, Object> sortedInstructions = new TreeMap<>(instructions);
+    String renderKey = String.join("|", mimeType, String.valueOf(sortedInstructions));
+    sortedInstructions.keySet().removeAll(Set.of("wid", "hei"));
+    String fullSizeRenderKey = String.join("|", mimeType, String.valueOf(sortedInstructions));
+    if (compressionLevel >= 0) {
+      // not a Gfx instruction, only the Java engine applies it
+      renderKey += "|level=" + compressionLevel;
+      fullSizeRenderKey += "|level=" + compressionLevel;
+    }
+    if (profile.getRenderEngine() != null) {
+      renderKey += "|" + profile.getRenderEngine();
+      fullSizeRenderKey += "|" + profile.getRenderEngine();
+    }
+
+    return RenditionSpec.builder()
+        .profileName(profile.getName())
+        .name(rendition.getName())
+        .mimeType(mimeType)
+        .wid(width)
+        .hei(height)
+        .qlt(quality)
+        .priority(rendition.getPriority() != null ? rendition.getPriority().intValue() : 0)
+        .lazy(Boolean.TRUE.equals(rendition.getLazy()))
+        .progressive(progressive)
+        .palette(palette)
+        .compressionLevel(compressionLevel)
+        .renderEngine(profile.getRenderEngine())
+        .instructions(Collections.unmodifiableMap(instructions))
+        .fingerprint(DigestUtils.sha256Hex(rendition.getName() + "|" + renderKey))
+        .renderKey(DigestUtils.sha256Hex(renderKey))
+        .fullSizeRenderKey(DigestUtils.sha256Hex(fullSizeRenderKey))
+        .includeMimeTypes(compileMimeTypes(rendition.getIncludeMimeTypes()))
+        .excludeMimeTypes(compileMimeTypes(rendition.getExcludeMimeTypes()))
+        .build();
+  }
+
+  /**
+   * Whether the rendition is generated for an original of the mime type.
+   */
+  boolean accepts(String assetMimeType) {
+    String mimeType = StringUtils.defaultString(assetMimeType);
+    return (includeMimeTypes == null || includeMimeTypes.matcher(mimeType).matches())
+        && (excludeMimeTypes == null || !excludeMimeTypes.matcher(mimeType).matches());
+  }
+
+  /**
+   * Compiles comma separated mime type expressions into a single pattern, {@code null} when there are none.
+   */
+  private static Pattern compileMimeTypes(String mimeTypes) {
+    String expression = Arrays.stream(StringUtils.split(StringUtils.defaultString(mimeTypes), ','))
+        .map(StringUtils::trim)
+        .filter(StringUtils::isNotEmpty)
+        .map(mimeType -> "(?:" + mimeType + ")")
+        .collect(Collectors.joining("|"));
+    if (expression.isEmpty()) {
+      return null;
+    }
+    try {
+      return Pattern.compile(expression, Pattern.CASE_INSENSITIVE);
+    } catch (PatternSyntaxException e) {
+      log.warn("Invalid mime type expression {}, matching it literally.", mimeTypes, e);
+      return Pattern.compile(Pattern.quote(mimeTypes), Pattern.CASE_INSENSITIVE);
+    }
+  }
+
+  /**
+   * Number of palette colors of the quality, from 2 to 256.
+   */
+  static int getPaletteColors(int quality) {
+    return Math.max(2, Math.min(256, Math.round(256 * quality / 100f)));
+  }
+
+  /**
+   * Output format of the rendition, empty when it is not one of the known formats.
+   */
+  Optional<OutputFormat> getOutputFormat() {
+    return OutputFormat.of(mimeType);
+  }
+
+  long getArea() {
+    return (long) wid * hei;
+  }
+
+  /**
+   * Whether the rendition is generated before the deferred ones: a positive priority always is, a negative never, and
+   * otherwise when its longer side does not exceed the given size.
+   */
+  boolean isEarly(int earlyMaxSize) {
+    if (priority != 0) {
+      return priority > 0;
+    }
+    return Math.max(wid, hei) <= earlyMaxSize;
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Rendered rendition held until it is stored. Renditions up to the threshold stay in a pooled buffer, larger ones are
+ * spooled to a temporary file, so that large renders do not occupy the heap while they wait to be stored.
+ */
+@Slf4j
+class RenditionSpool implements Closeable {
+
+  private final Pool pool;
+
+  private final byte[] buffer;
+
+  private final Path file;
+
+  @Getter
+  private final long length;
+
+  private RenditionSpool(Pool pool, byte[] buffer, Path file, long length) {
+    this.pool = pool;
+    this.buffer = buffer;
+    this.file = file;
+    this.length = length;
+  }
+
+  boolean isInMemory() {
+    return file == null;
+  }
+
+  InputStream openStream() throws IOException {
+    return isInMemory()
+        ? new ByteArrayInputStream(buffer, 0, (int) length)
+        : new BufferedInputStream(Files.newInputStream(file));
+  }
+
+  /**
+   * Returns the buffer to the pool or deletes the file.
+   */
+  @Override
+  public void close() {
+    if (isInMemory()) {
+      pool.release(buffer);
+      return;
+    }
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      log.warn("Could not delete spooled rendition {}.", file, e);
+    }
+  }
+
+  /**
+   * Buffers of the threshold size reused by subsequent renders, and the directory of the spooled files.
+   */
+  static class Pool {
+
+    private static final String PREFIX = "local-renditions-";
+
+    private final int threshold;
+
+    private final Path directory;
+
+    private final BlockingQueue<byte[]> buffers;
+
+    /**
+     * @param threshold largest rendition kept in memory, in bytes
+     * @param maxPooled number of buffers kept for reuse
+     * @param directory directory of the spooled files, {@code null} for the default temporary directory
+     */
+    Pool(int threshold, int maxPooled, Path directory) {
+      this.threshold = Math.max(0, threshold);
+      this.directory = directory;
+      this.buffers = new ArrayBlockingQueue<>(Math.max(1, maxPooled));
+    }
+
+    /**
+     * Reads the stream fully, the stream is not closed.
+     */
+    RenditionSpool spool(InputStream stream) throws IOException {
+      byte[] buffer = acquire();
+      int length = IOUtils.read(stream, buffer);
+      int next = length < buffer.length ? -1 : stream.read();
+      if (next < 0) {
+        return new RenditionSpool(this, buffer, null, length);
+      }
+
+      Path file = directory != null
+          ? Files.createTempFile(directory, PREFIX, ".tmp")
+          : Files.createTempFile(PREFIX, ".tmp");
+      try (OutputStream output = Files.newOutputStream(file)) {
+        output.write(buffer, 0, length);
+        output.write(next);
+        long total = length + 1 + IOUtils.copyLarge(stream, output);
+        return new RenditionSpool(this, null, file, total);
+      } catch (IOException e) {
+        Files.deleteIfExists(file);
+        throw e;
+      } finally {
+        release(buffer);
+      }
+    }
+
+    private byte[] acquire() {
+      byte[] buffer = buffers.poll();
+      return buffer != null ? buffer : new byte[threshold];
+    }
+
+    private void release(byte[] buffer) {
+      buffers.offer(buffer);
+    }
+  }
+}
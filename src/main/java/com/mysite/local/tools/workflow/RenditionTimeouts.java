@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mysite.local.tools.workflow;
+
+import com.day.crx.JcrConstants;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.Resource;
+
+/**
+ * Renditions of an asset whose render exceeded its deadline, stored on the {@code jcr:content} of the asset by the
+ * fingerprint of the rendition, so that later runs can skip them or render them with a degraded plan. Changes are
+ * persisted by the write batch of the asset.
+ */
+@Slf4j
+class RenditionTimeouts {
+
+  static final String TIMED_OUT = "renditionTimeouts";
+
+  private final Resource assetContent;
+
+  private final Set<String> fingerprints;
+
+  RenditionTimeouts(Resource assetResource) {
+    this.assetContent = assetResource.getChild(JcrConstants.JCR_CONTENT);
+    this.fingerprints = new LinkedHashSet<>(Arrays.asList(Optional.ofNullable(assetContent)
+        .map(content -> content.getValueMap().get(TIMED_OUT, String[].class))
+        .orElse(new String[0])));
+  }
+
+  boolean contains(String fingerprint) {
+    return fingerprints.contains(fingerprint);
+  }
+
+  void add(String fingerprint) {
+    if (fingerprints.add(fingerprint)) {
+      store();
+    }
+  }
+
+  void remove(String fingerprint) {
+    if (fingerprints.remove(fingerprint)) {
+      store();
+    }
+  }
+
+  private void store() {
+    ModifiableValueMap valueMap = assetContent != null ? assetContent.adaptTo(ModifiableValueMap.class) : null;
+    if (valueMap == null) {
+      log.warn("Could not store timed out renditions of {}.", assetContent);
+      return;
+    }
+    if (fingerprints.isEmpty()) {
+      valueMap.remove(TIMED_OUT);
+    } else {
+      valueMap.put(TIMED_OUT, fingerprints.toArray(new String[0]));
+    }
+  }
+}
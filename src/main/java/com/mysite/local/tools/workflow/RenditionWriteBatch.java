@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import com.day.cq.dam.api.Rendition;
+import com.day.crx.JcrConstants;
+import java.awt.Dimension;
+import java.util.Objects;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.ResourceResolver;
+
+/**
+ * Collects rendition binaries and their metadata in the session of the resource resolver and persists them with a
+ * single commit per configured number of assets.
+ */
+@Slf4j
+@RequiredArgsConstructor
+class RenditionWriteBatch {
+
+  static final String METADATA_MIXIN = "dam:Metadata";
+
+  static final String METADATA_NODE = "metadata";
+
+  static final String IMAGE_WIDTH = "tiff:ImageWidth";
+
+  static final String IMAGE_LENGTH = "tiff:ImageLength";
+
+  private final ResourceResolver resourceResolver;
+
+  private final int assetsPerCommit;
+
+  /**
+   * Records commit latency, {@code null} when not measured.
+   */
+  private final RenditionMetrics metrics;
+
+  private int pendingAssets;
+
+  @Getter
+  private int commits;
+
+  RenditionWriteBatch(ResourceResolver resourceResolver, int assetsPerCommit) {
+    this(resourceResolver, assetsPerCommit, null);
+  }
+
+  /**
+   * Writes the dimensions and fingerprint of the rendition to its metadata node, reusing the node when it already
+   * exists. A {@code null} fingerprint removes the stored one.
+   */
+  void addMetadata(Rendition rendition, Dimension dimension, String fingerprint) {
+    try {
+      Node renditionNode = Objects.requireNonNull(rendition.adaptTo(Node.class));
+      Node jcrContent = renditionNode.getNode(JcrConstants.JCR_CONTENT);
+      jcrContent.addMixin(METADATA_MIXIN);
+
+      Node metadata = jcrContent.hasNode(METADATA_NODE)
+          ? jcrContent.getNode(METADATA_NODE)
+          : jcrContent.addNode(METADATA_NODE, JcrConstants.NT_UNSTRUCTURED);
+      metadata.setProperty(IMAGE_WIDTH, dimension.width);
+      metadata.setProperty(IMAGE_LENGTH, dimension.height);
+      metadata.setProperty(RenditionFingerprint.FINGERPRINT, fingerprint);
+    } catch (RepositoryException e) {
+      log.error("Error while updating metadata for rendition.", e);
+    }
+  }
+
+  /**
+   * Marks the changes of an asset as complete and commits once enough assets are pending.
+   */
+  void assetDone() {
+    pendingAssets++;
+    if (pendingAssets >= assetsPerCommit) {
+      commit();
+    }
+  }
+
+  /**
+   * Persists pending changes.
+   *
+   * @return {@code false} when persisting failed and the changes were reverted
+   */
+  boolean commit() {
+    pendingAssets = 0;
+    if (!resourceResolver.hasChanges()) {
+      return true;
+    }
+    long start = System.nanoTime();
+    try {
+      resourceResolver.commit();
+      commits++;
+      if (metrics != null) {
+        metrics.record(RenditionMetrics.Stage.COMMIT, null, System.nanoTime() - start);
+      }
+      return true;
+    } catch (PersistenceException e) {
+      log.error("Error while saving renditions.", e);
+      resourceResolver.revert();
+      return false;
+    }
+  }
+}
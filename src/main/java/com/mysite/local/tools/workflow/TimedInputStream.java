@@ -0,0 +1,60 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import lombok.Getter;
+
+/**
+ * Counts bytes read from a stream and the time spent waiting for them, which is the time the producer of a lazily
+ * rendered stream takes, as opposed to the time its consumer spends with them.
+ */
+@Getter
+class TimedInputStream extends FilterInputStream {
+
+  private long bytes;
+
+  private long readNanos;
+
+  TimedInputStream(InputStream in) {
+    super(in);
+  }
+
+  @Override
+  public int read() throws IOException {
+    long start = System.nanoTime();
+    int result = super.read();
+    readNanos += System.nanoTime() - start;
+    if (result >= 0) {
+      bytes++;
+    }
+    return result;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    long start = System.nanoTime();
+    int result = super.read(buffer, offset, length);
+    readNanos += System.nanoTime() - start;
+    if (result > 0) {
+      bytes += result;
+    }
+    return result;
+  }
+}
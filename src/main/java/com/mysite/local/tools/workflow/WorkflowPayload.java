@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mysite.local.tools.workflow;
+
+import com.day.cq.dam.api.DamConstants;
+import com.day.crx.JcrConstants;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+
+/**
+ * Assets of a workflow payload. The payload can list assets, DAM folders whose assets are streamed depth first, and
+ * workflow packages whose filter roots are resolved the same way. Every asset is streamed once and only the path of
+ * each one is held in memory.
+ */
+@Slf4j
+@RequiredArgsConstructor
+class WorkflowPayload {
+
+  static final String PACKAGE_FILTER_PATH = JcrConstants.JCR_CONTENT + "/vlt:definition/filter";
+
+  static final String FILTER_ROOT = "root";
+
+  private final ResourceResolver resourceResolver;
+
+  @Getter
+  private final List<String> paths;
+
+  /**
+   * Whether the payload is exactly one asset.
+   */
+  boolean isSingleAsset() {
+    return paths.size() == 1 && Optional.ofNullable(resourceResolver.getResource(paths.get(0)))
+        .filter(resource -> resource.isResourceType(DamConstants.NT_DAM_ASSET))
+        .isPresent();
+  }
+
+  Stream<String> getAssetPaths() {
+    Set<String> streamed = new HashSet<>();
+    return paths.stream()
+        .flatMap(this::getAssets)
+        .map(Resource::getPath)
+        .filter(streamed::add);
+  }
+
+  private Stream<Resource> getAssets(String path) {
+    Resource resource = resourceResolver.getResource(path);
+    if (resource == null) {
+      log.warn("Payload resource {} does not exist.", path);
+      return Stream.empty();
+    }
+    if (resource.isResourceType(DamConstants.NT_DAM_ASSET)) {
+      return Stream.of(resource);
+    }
+    Resource filter = resource.getChild(PACKAGE_FILTER_PATH);
+    if (filter != null) {
+      return StreamSupport.stream(filter.getChildren().spliterator(), false)
+          .map(entry -> entry.getValueMap().get(FILTER_ROOT, String.class))
+          .filter(Objects::nonNull)
+          .flatMap(this::getAssets);
+    }
+    if (!path.startsWith(ProcessingProfilesUtil.DAM_ROOT)) {
+      log.warn("Payload resource {} is neither an asset, a DAM folder nor a workflow package.", path);
+      return Stream.empty();
+    }
+    return new DamAssetsIterator(resource, null).toStream();
+  }
+}
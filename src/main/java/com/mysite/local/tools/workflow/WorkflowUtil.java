@@ -17,43 +17,148 @@
 package com.mysite.local.tools.workflow;
 
 import com.adobe.granite.workflow.exec.WorkItem;
+import com.adobe.granite.workflow.metadata.MetaDataMap;
+import com.day.cq.dam.api.Asset;
 import com.day.cq.dam.api.Rendition;
 import java.awt.Dimension;
-import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
 import javax.jcr.RepositoryException;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.Resource;
 
 @Slf4j
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 class WorkflowUtil {
 
-  static String getAssetPath(WorkItem workItem) {
+  static final String FORCE_RENDITIONS = "forceRenditions";
+
+  static final String PROCESS_ARGS = "PROCESS_ARGS";
+
+  static final String FORCE_ARG = "force";
+
+  /**
+   * Paths of a payload listing several of them on separate lines, a single path otherwise. Paths are not split on
+   * commas, which are valid in asset names.
+   */
+  static List<String> getPayloadPaths(WorkItem workItem) {
     return Optional.ofNullable(workItem.getWorkflowData().getPayload())
         .filter(String.class::isInstance)
         .map(String.class::cast)
+        .map(payload -> StringUtils.split(payload, "\r\n"))
+        .map(Arrays::stream)
+        .orElseGet(Stream::empty)
+        .map(StringUtils::trim)
+        .filter(StringUtils::isNotEmpty)
         // there are cases when the path points to /jcr:content/renditions/original
         .map(path -> StringUtils.substringBefore(path, "/jcr:content"))
-        .orElse(StringUtils.EMPTY);
+        .distinct()
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Whether renditions should be generated even when they are up to date, requested either by the
+   * {@code forceRenditions} flag of the workflow data or by the {@code force} argument of the process step.
+   */
+  static boolean isForced(WorkItem workItem, MetaDataMap stepMetaDataMap) {
+    boolean forcedByWorkflow = Optional.ofNullable(workItem.getWorkflowData().getMetaDataMap())
+        .map(metaDataMap -> metaDataMap.get(FORCE_RENDITIONS, Boolean.FALSE))
+        .orElse(false);
+    boolean forcedByStep = Optional.ofNullable(stepMetaDataMap)
+        .map(metaDataMap -> metaDataMap.get(PROCESS_ARGS, StringUtils.EMPTY))
+        .map(args -> StringUtils.split(args, ", "))
+        .map(args -> ArrayUtils.contains(args, FORCE_ARG))
+        .orElse(false);
+    return forcedByWorkflow || forcedByStep;
   }
 
   static Optional<Dimension> getRenditionSize(Rendition rendition) {
     return Optional.ofNullable(rendition)
-        .map(rend -> {
-          Dimension dimension = null;
-          try {
-            BufferedImage image = ImageIO.read(rend.getBinary().getStream());
-            dimension = new Dimension(image.getWidth(), image.getHeight());
+        .flatMap(rend -> {
+          try (InputStream stream = rend.getBinary().getStream()) {
+            return readImageSize(stream);
           } catch (IOException | RepositoryException e) {
             log.error("Error occurred while reading the rendition.", e);
           }
-          return dimension;
+          return Optional.empty();
         });
   }
 
+  /**
+   * Reads the image dimensions from the header only, without decoding the pixels.
+   */
+  static Optional<Dimension> readImageSize(InputStream inputStream) throws IOException {
+    return readHeader(inputStream, reader -> new Dimension(reader.getWidth(0), reader.getHeight(0)));
+  }
+
+  /**
+   * Rendition a source path points to: the original of an asset or the rendition itself.
+   */
+  static Optional<Rendition> getSourceRendition(Resource resource) {
+    return Optional.ofNullable(resource.adaptTo(Asset.class))
+        .map(Asset::getOriginal)
+        .or(() -> Optional.ofNullable(resource.adaptTo(Rendition.class)));
+  }
+
+  /**
+   * Whether the image has an alpha channel, read from its header without decoding the pixels. Empty when the header
+   * could not be read, so the caller decides how to handle an unknown image.
+   */
+  static Optional<Boolean> hasAlpha(Rendition rendition) {
+    try (InputStream stream = rendition.getStream()) {
+      if (stream == null) {
+        return Optional.empty();
+      }
+      return readHeader(stream, reader -> {
+        Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+        return types.hasNext() ? types.next().getColorModel().hasAlpha() : null;
+      });
+    } catch (IOException e) {
+      log.warn("Could not read the header of {}.", rendition.getPath(), e);
+      return Optional.empty();
+    }
+  }
+
+  private static <T> Optional<T> readHeader(InputStream inputStream, HeaderReader<T> headerReader)
+      throws IOException {
+    try (ImageInputStream imageStream = ImageIO.createImageInputStream(inputStream)) {
+      if (imageStream == null) {
+        return Optional.empty();
+      }
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(imageStream);
+      if (!readers.hasNext()) {
+        return Optional.empty();
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(imageStream, true, true);
+        return Optional.ofNullable(headerReader.read(reader));
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  @FunctionalInterface
+  private interface HeaderReader<T> {
+
+    /**
+     * Value read from the header, {@code null} when the header does not hold it.
+     */
+    T read(ImageReader reader) throws IOException;
+  }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mysite.local.tools.workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(AemContextExtension.class)
+class AssetCoalescerTest {
+
+  private static final String ASSET_PATH = "/content/dam/asset.jpg";
+
+  private final AemContext context = new AemContext();
+
+  private final List<Boolean> runs = new CopyOnWriteArrayList<>();
+
+  private AssetCoalescer coalescer;
+
+  @BeforeEach
+  void setUp() {
+    coalescer = context.registerInjectActivateService(new AssetCoalescer());
+  }
+
+  @Test
+  @DisplayName("Given no run in flight, When run, Then run the task once with the trigger's force")
+  void testRun() {
+    assertTrue(coalescer.run(ASSET_PATH, true, runs::add));
+    assertTrue(coalescer.run(ASSET_PATH, false, runs::add));
+
+    assertEquals(List.of(true, false), runs);
+  }
+
+  @Test
+  @DisplayName("Given run in flight, When triggered repeatedly, Then collapse the triggers into one forced follow-up run")
+  void testCoalesce() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<Boolean> first = CompletableFuture.supplyAsync(() -> coalescer.run(ASSET_PATH, false, force -> {
+      runs.add(force);
+      started.countDown();
+      await(release);
+    }));
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    assertFalse(coalescer.run(ASSET_PATH, true, runs::add));
+    assertFalse(coalescer.run(ASSET_PATH, false, runs::add));
+    release.countDown();
+
+    assertTrue(first.get(5, TimeUnit.SECONDS));
+    assertEquals(List.of(false, true), runs);
+  }
+
+  @Test
+  @DisplayName("Given run of another asset in flight, When run, Then run the task without waiting")
+  void testOtherAsset() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<Boolean> first = CompletableFuture.supplyAsync(() -> coalescer.run(ASSET_PATH, false, force -> {
+      started.countDown();
+      await(release);
+    }));
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    assertTrue(coalescer.run("/content/dam/other.jpg", false, runs::add));
+    release.countDown();
+
+    assertTrue(first.get(5, TimeUnit.SECONDS));
+    assertEquals(List.of(false), runs);
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
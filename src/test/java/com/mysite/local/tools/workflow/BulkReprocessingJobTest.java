@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.consumer.JobExecutionContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(AemContextExtension.class)
+class BulkReprocessingJobTest {
+
+  private static final String FOLDER_PATH = "/content/dam/bulk";
+
+  private final AemContext context = new AemContext();
+
+  private final List<String> generated = new ArrayList<>();
+
+  private BulkReprocessingJob bulkReprocessingJob;
+
+  private Job job;
+
+  @BeforeEach
+  void setUp() throws PersistenceException {
+    Stream.of(
+        "/content/dam/bulk/b/2.png",
+        "/content/dam/bulk/b/1.png",
+        "/content/dam/bulk/a/c/3.png",
+        "/content/dam/bulk/0.png"
+    ).forEach(path -> context.create().resource(path, "jcr:primaryType", "dam:Asset"));
+    context.resourceResolver().commit();
+
+    RenditionGenerator renditionGenerator = mock(RenditionGenerator.class);
+    when(renditionGenerator.newWriteBatch(any(), anyInt()))
+        .thenAnswer(invocation -> new RenditionWriteBatch(invocation.getArgument(0), invocation.getArgument(1)));
+    doAnswer(invocation -> generated.add(invocation.<Resource>getArgument(0).getPath()))
+        .when(renditionGenerator).generateRenditions(any(), any(), anyBoolean());
+    context.registerService(RenditionGenerator.class, renditionGenerator);
+    bulkReprocessingJob = context.registerInjectActivateService(new BulkReprocessingJob(), "batchSize", 1);
+
+    job = mock(Job.class);
+    when(job.getProperty(BulkReprocessingJob.PROPERTY_PATH, String.class)).thenReturn(FOLDER_PATH);
+    when(job.getProperty(BulkReprocessingJob.PROPERTY_FORCE, Boolean.FALSE)).thenReturn(false);
+  }
+
+  @Test
+  @DisplayName("Given checkpoint of a previous run, When process, Then generate only assets after it and remove it")
+  void testResumeFromCheckpoint() throws PersistenceException {
+    new BulkCheckpoint(context.resourceResolver(), FOLDER_PATH).update("/content/dam/bulk/a/c/3.png", 2);
+    context.resourceResolver().commit();
+    JobExecutionContext.ResultBuilder result = mockResultBuilder();
+
+    bulkReprocessingJob.process(job, mockJobContext(result));
+
+    assertEquals(List.of("/content/dam/bulk/b/1.png", "/content/dam/bulk/b/2.png"), generated);
+    verify(result).message("4 assets processed.");
+    verify(result).succeeded();
+    context.resourceResolver().refresh();
+    assertNull(new BulkCheckpoint(context.resourceResolver(), FOLDER_PATH).getLastPath());
+  }
+
+  @Test
+  @DisplayName("Given job stopped midway, When process and retried, Then store checkpoint of the committed assets "
+      + "and resume after it")
+  void testStopMidway() {
+    JobExecutionContext.ResultBuilder stoppedResult = mockResultBuilder();
+    JobExecutionContext stoppedContext = mockJobContext(stoppedResult);
+    when(stoppedContext.isStopped()).thenReturn(false, false, true);
+
+    bulkReprocessingJob.process(job, stoppedContext);
+
+    assertEquals(List.of("/content/dam/bulk/0.png", "/content/dam/bulk/a/c/3.png"), generated);
+    verify(stoppedResult).message("Stopped after 2 assets.");
+    verify(stoppedResult).failed();
+    context.resourceResolver().refresh();
+    BulkCheckpoint checkpoint = new BulkCheckpoint(context.resourceResolver(), FOLDER_PATH);
+    assertEquals("/content/dam/bulk/a/c/3.png", checkpoint.getLastPath());
+    assertEquals(2, checkpoint.getProcessed());
+
+    generated.clear();
+    JobExecutionContext.ResultBuilder retriedResult = mockResultBuilder();
+
+    bulkReprocessingJob.process(job, mockJobContext(retriedResult));
+
+    assertEquals(List.of("/content/dam/bulk/b/1.png", "/content/dam/bulk/b/2.png"), generated);
+    verify(retriedResult).message("4 assets processed.");
+    verify(retriedResult).succeeded();
+  }
+
+  private static JobExecutionContext mockJobContext(JobExecutionContext.ResultBuilder result) {
+    JobExecutionContext jobContext = mock(JobExecutionContext.class);
+    when(jobContext.result()).thenReturn(result);
+    return jobContext;
+  }
+
+  private static JobExecutionContext.ResultBuilder mockResultBuilder() {
+    JobExecutionContext.ResultBuilder result = mock(JobExecutionContext.ResultBuilder.class);
+    when(result.message(anyString())).thenReturn(result);
+    return result;
+  }
+}
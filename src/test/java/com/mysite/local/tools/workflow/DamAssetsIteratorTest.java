@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.sling.api.resource.Resource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(AemContextExtension.class)
+class DamAssetsIteratorTest {
+
+  private final AemContext context = new AemContext();
+
+  private Resource folder;
+
+  @BeforeEach
+  void setUp() {
+    Stream.of(
+        "/content/dam/bulk/b/2.png",
+        "/content/dam/bulk/b/1.png",
+        "/content/dam/bulk/a/c/3.png",
+        "/content/dam/bulk/0.png"
+    ).forEach(path -> context.create().resource(path, "jcr:primaryType", "dam:Asset"));
+    context.create().resource("/content/dam/bulk/jcr:content", "jcr:primaryType", "nt:unstructured");
+    folder = context.resourceResolver().getResource("/content/dam/bulk");
+  }
+
+  @Test
+  @DisplayName("Given DAM folder, When iterated, Then stream assets depth first ordered by name")
+  void testIterate() {
+    assertEquals(List.of(
+        "/content/dam/bulk/0.png",
+        "/content/dam/bulk/a/c/3.png",
+        "/content/dam/bulk/b/1.png",
+        "/content/dam/bulk/b/2.png"
+    ), paths(new DamAssetsIterator(folder, null)));
+  }
+
+  @Test
+  @DisplayName("Given last processed asset, When iterated, Then stream only assets after it")
+  void testIterateWithResumePoint() {
+    assertEquals(List.of(
+        "/content/dam/bulk/b/1.png",
+        "/content/dam/bulk/b/2.png"
+    ), paths(new DamAssetsIterator(folder, "/content/dam/bulk/a/c/3.png")));
+  }
+
+  @Test
+  @DisplayName("Given removed last processed asset, When iterated, Then stream assets following its position")
+  void testIterateWithRemovedResumePoint() {
+    assertEquals(List.of(
+        "/content/dam/bulk/b/2.png"
+    ), paths(new DamAssetsIterator(folder, "/content/dam/bulk/b/1a.png")));
+  }
+
+  private static List<String> paths(DamAssetsIterator iterator) {
+    return iterator.toStream()
+        .map(Resource::getPath)
+        .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Dimension;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class ImageHeaderCapturingInputStreamTest {
+
+  @Test
+  @DisplayName("Given image stream, When fully consumed, Then pass bytes through and return valid image dimensions")
+  void testGetDimension() {
+    Stream.of("/images/testImage.bmp", "/images/testImage.png", "/images/testImage.jpg")
+        .forEach(path -> {
+          byte[] image = readResource(path);
+          ImageHeaderCapturingInputStream stream = new ImageHeaderCapturingInputStream(new ByteArrayInputStream(image));
+
+          assertArrayEquals(image, readFully(stream));
+          Optional<Dimension> optDimension = stream.getDimension();
+          assertTrue(optDimension.isPresent());
+          assertEquals(4, optDimension.get().width);
+          assertEquals(6, optDimension.get().height);
+        });
+  }
+
+  @Test
+  @DisplayName("Given header larger than capture limit, When getDimension, Then return empty")
+  void testGetDimensionWithTruncatedHeader() {
+    byte[] image = readResource("/images/testImage.png");
+    ImageHeaderCapturingInputStream stream = new ImageHeaderCapturingInputStream(new ByteArrayInputStream(image), 8);
+
+    readFully(stream);
+
+    assertFalse(stream.getDimension().isPresent());
+  }
+
+  private static byte[] readResource(String path) {
+    try (InputStream inputStream = ImageHeaderCapturingInputStreamTest.class.getResourceAsStream(path)) {
+      return IOUtils.toByteArray(inputStream);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static byte[] readFully(InputStream inputStream) {
+    try {
+      return IOUtils.toByteArray(inputStream);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class JavaRenderEngineTest {
+
+  @Test
+  @DisplayName("Given large JPEG original, When rendered, Then fit JPEG into rendition size")
+  void testRenderJpeg() throws IOException {
+    byte[] original = createImage(1200, 800, "jpeg");
+
+    BufferedImage rendition = decode(JavaRenderEngine.render(new ByteArrayInputStream(original),
+        spec("medium.jpeg", "image/jpeg", 300, 300)));
+
+    assertEquals(300, rendition.getWidth());
+    assertEquals(200, rendition.getHeight());
+  }
+
+  @Test
+  @DisplayName("Given opaque PNG original, When rendered, Then do not add alpha and do not upscale")
+  void testRenderPngWithoutUpscale() throws IOException {
+    try (InputStream original = JavaRenderEngineTest.class.getResourceAsStream("/images/testImage.png")) {
+      BufferedImage rendition = decode(JavaRenderEngine.render(original,
+          spec("large.png", "image/png", 100, 100)));
+
+      assertEquals(4, rendition.getWidth());
+      assertEquals(6, rendition.getHeight());
+      assertFalse(rendition.getColorModel().hasAlpha());
+    }
+  }
+
+  @Test
+  @DisplayName("Given PNG original with alpha, When rendered to PNG and JPEG, Then keep alpha only in PNG")
+  void testRenderAlpha() throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ImageIO.write(new BufferedImage(400, 400, BufferedImage.TYPE_INT_ARGB), "png", output);
+    byte[] original = output.toByteArray();
+
+    assertTrue(decode(JavaRenderEngine.render(new ByteArrayInputStream(original),
+        spec("medium.png", "image/png", 100, 100))).getColorModel().hasAlpha());
+    assertFalse(decode(JavaRenderEngine.render(new ByteArrayInputStream(original),
+        spec("medium.jpeg", "image/jpeg", 100, 100))).getColorModel().hasAlpha());
+  }
+
+  @Test
+  @DisplayName("Given palette PNG rendition, When rendered, Then encode it with a palette")
+  void testRenderPalette() throws IOException {
+    byte[] original = createImage(400, 400, "jpeg");
+    RenditionSpec spec = RenditionSpec.builder()
+        .name("medium.png")
+        .mimeType("image/png")
+        .wid(100)
+        .hei(100)
+        .qlt(85)
+        .palette(true)
+        .compressionLevel(9)
+        .build();
+
+    BufferedImage rendition = decode(JavaRenderEngine.render(new ByteArrayInputStream(original), spec));
+
+    assertTrue(rendition.getColorModel() instanceof IndexColorModel);
+  }
+
+  @Test
+  @DisplayName("Given palette PNG rendition of low quality, When rendered, Then use the colors the quality maps to")
+  void testRenderPaletteColors() throws IOException {
+    BufferedImage gradient = new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB);
+    for (int x = 0; x < gradient.getWidth(); x++) {
+      for (int y = 0; y < gradient.getHeight(); y++) {
+        gradient.setRGB(x, y, x << 16 | y << 8 | (x + y) / 2);
+      }
+    }
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ImageIO.write(gradient, "png", output);
+    RenditionSpec spec = RenditionSpec.builder()
+        .name("small.png")
+        .mimeType("image/png")
+        .wid(100)
+        .hei(100)
+        .qlt(6)
+        .palette(true)
+        .build();
+
+    BufferedImage rendition = decode(JavaRenderEngine.render(new ByteArrayInputStream(output.toByteArray()), spec));
+
+    Set<Integer> colors = new HashSet<>();
+    for (int x = 0; x < rendition.getWidth(); x++) {
+      for (int y = 0; y < rendition.getHeight(); y++) {
+        colors.add(rendition.getRGB(x, y));
+      }
+    }
+    assertTrue(colors.size() > 1);
+    assertTrue(colors.size() <= RenditionSpec.getPaletteColors(6));
+  }
+
+  @Test
+  @DisplayName("Given source much larger than target, When subsampling computed, Then decode at least twice target")
+  void testSubsampling() {
+    Dimension source = new Dimension(6000, 4000);
+    Dimension target = JavaRenderEngine.getTargetSize(source, 800, 800);
+
+    assertEquals(new Dimension(800, 533), target);
+    assertEquals(3, JavaRenderEngine.getSubsampling(source, target));
+    assertEquals(1, JavaRenderEngine.getSubsampling(target, target));
+  }
+
+  private static RenditionSpec spec(String name, String mimeType, int width, int height) {
+    return RenditionSpec.builder()
+        .name(name)
+        .mimeType(mimeType)
+        .wid(width)
+        .hei(height)
+        .qlt(85)
+        .build();
+  }
+
+  private static byte[] createImage(int width, int height, String format) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), format, output);
+    return output.toByteArray();
+  }
+
+  private static BufferedImage decode(byte[] image) throws IOException {
+    assertNotNull(image);
+    return ImageIO.read(new ByteArrayInputStream(image));
+  }
+}
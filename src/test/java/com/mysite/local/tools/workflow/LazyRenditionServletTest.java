@@ -0,0 +1,194 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.day.cq.dam.api.Asset;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.servlet.MockRequestPathInfo;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(AemContextExtension.class)
+class LazyRenditionServletTest {
+
+  private static final String ASSET_PATH = "/content/dam/lazy/original.jpeg";
+
+  private static final String RENDITION_NAME = "lazy.jpeg";
+
+  private static final byte[] RENDITION = "rendition".getBytes(StandardCharsets.UTF_8);
+
+  // renditions are read with their size, which needs a JCR backed resource resolver
+  private final AemContext context = new AemContext(ResourceResolverType.JCR_MOCK);
+
+  private final AtomicInteger renders = new AtomicInteger();
+
+  private final CountDownLatch renderStarted = new CountDownLatch(1);
+
+  private volatile CountDownLatch renderReleased = new CountDownLatch(0);
+
+  private RenditionGenerator renditionGenerator;
+
+  private LazyRenditionServlet servlet;
+
+  @BeforeEach
+  void setUp() {
+    context.create().asset(ASSET_PATH, 400, 300, "image/jpeg");
+
+    renditionGenerator = mock(RenditionGenerator.class);
+    when(renditionGenerator.isLazyRendition(any(), eq(RENDITION_NAME))).thenReturn(true);
+    when(renditionGenerator.newWriteBatch(any(), anyInt()))
+        .thenAnswer(invocation -> new RenditionWriteBatch(invocation.getArgument(0), invocation.getArgument(1)));
+    when(renditionGenerator.generateLazyRendition(any(), any(), anyString())).thenAnswer(invocation -> {
+      renders.incrementAndGet();
+      renderStarted.countDown();
+      assertTrue(renderReleased.await(10, TimeUnit.SECONDS));
+      invocation.<Resource>getArgument(0).adaptTo(Asset.class)
+          .addRendition(invocation.getArgument(2), new ByteArrayInputStream(RENDITION), "image/jpeg");
+      return true;
+    });
+    context.registerService(RenditionGenerator.class, renditionGenerator);
+    servlet = context.registerInjectActivateService(new LazyRenditionServlet());
+  }
+
+  @Test
+  @DisplayName("Given missing lazy rendition, When doGet twice, Then render it once and serve the stored one")
+  void testPersistence() throws IOException, LoginException {
+    MockSlingHttpServletResponse first = get("/" + RENDITION_NAME);
+    MockSlingHttpServletResponse second = get("/" + RENDITION_NAME);
+
+    assertRendition(first);
+    assertRendition(second);
+    assertEquals(1, renders.get());
+    context.resourceResolver().refresh();
+    assertNotNull(context.resourceResolver().getResource(ASSET_PATH).adaptTo(Asset.class)
+        .getRendition(RENDITION_NAME));
+  }
+
+  @Test
+  @DisplayName("Given concurrent requests of a missing lazy rendition, When doGet, Then render it once for both")
+  void testConcurrentRequests() throws Exception {
+    renderReleased = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<MockSlingHttpServletResponse> first = executor.submit(() -> get("/" + RENDITION_NAME));
+      assertTrue(renderStarted.await(10, TimeUnit.SECONDS));
+      AtomicReference<Thread> waiting = new AtomicReference<>();
+      Future<MockSlingHttpServletResponse> second = executor.submit(() -> {
+        waiting.set(Thread.currentThread());
+        return get("/" + RENDITION_NAME);
+      });
+      awaitWaiting(waiting);
+      renderReleased.countDown();
+
+      assertRendition(first.get(10, TimeUnit.SECONDS));
+      assertRendition(second.get(10, TimeUnit.SECONDS));
+      assertEquals(1, renders.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  @DisplayName("Given suffix with a path, When doGet, Then reject it without rendering")
+  void testInvalidSuffix() throws IOException, LoginException {
+    assertEquals(HttpServletResponse.SC_BAD_REQUEST, get("/../" + RENDITION_NAME).getStatus());
+    assertEquals(HttpServletResponse.SC_BAD_REQUEST, get("/renditions/" + RENDITION_NAME).getStatus());
+    assertEquals(HttpServletResponse.SC_BAD_REQUEST, get("/..").getStatus());
+    assertEquals(HttpServletResponse.SC_BAD_REQUEST, get(null).getStatus());
+
+    verify(renditionGenerator, never()).isLazyRendition(any(), anyString());
+    verify(renditionGenerator, never()).newWriteBatch(any(), anyInt());
+  }
+
+  @Test
+  @DisplayName("Given rendition not declared lazy for the asset, When doGet, Then respond not found without rendering")
+  void testUndeclaredRendition() throws IOException, LoginException {
+    assertEquals(HttpServletResponse.SC_NOT_FOUND, get("/other.jpeg").getStatus());
+
+    verify(renditionGenerator, never()).newWriteBatch(any(), anyInt());
+    verify(renditionGenerator, never()).generateLazyRendition(any(), any(), anyString());
+    context.resourceResolver().refresh();
+    assertNull(context.resourceResolver().getResource(ASSET_PATH).adaptTo(Asset.class).getRendition("other.jpeg"));
+  }
+
+  /**
+   * Requests the rendition with a resource resolver of its own, as concurrent requests do.
+   */
+  private MockSlingHttpServletResponse get(String suffix) throws IOException, LoginException {
+    try (ResourceResolver resourceResolver = context.resourceResolver().clone(null)) {
+      MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(resourceResolver, context.bundleContext());
+      request.setResource(resourceResolver.getResource(ASSET_PATH));
+      MockRequestPathInfo requestPathInfo = (MockRequestPathInfo) request.getRequestPathInfo();
+      requestPathInfo.setSelectorString(LazyRenditionServlet.SELECTOR);
+      requestPathInfo.setSuffix(suffix);
+      MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+      servlet.doGet(request, response);
+      return response;
+    }
+  }
+
+  private static void assertRendition(MockSlingHttpServletResponse response) {
+    assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    assertEquals("image/jpeg", response.getContentType());
+    assertArrayEquals(RENDITION, response.getOutput());
+  }
+
+  /**
+   * Waits until the request thread parks on the render in flight.
+   */
+  private static void awaitWaiting(AtomicReference<Thread> requestThread) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (requestThread.get() == null || requestThread.get().getState() != Thread.State.WAITING) {
+      assertTrue(System.nanoTime() < deadline, "Request did not wait for the render in flight.");
+      Thread.sleep(10);
+    }
+  }
+}
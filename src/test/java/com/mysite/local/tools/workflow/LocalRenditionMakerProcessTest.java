@@ -0,0 +1,174 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.adobe.granite.workflow.WorkflowSession;
+import com.adobe.granite.workflow.exec.WorkItem;
+import com.adobe.granite.workflow.exec.WorkflowData;
+import com.adobe.granite.workflow.metadata.MetaDataMap;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.event.jobs.JobManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(AemContextExtension.class)
+class LocalRenditionMakerProcessTest {
+
+  private static final String PROFILE_PATH = "/conf/global/settings/dam/processing/profile";
+
+  private final AemContext context = new AemContext();
+
+  private final List<String> generated = new ArrayList<>();
+
+  private final List<RenditionWriteBatch> writeBatches = new ArrayList<>();
+
+  private RenditionGenerator renditionGenerator;
+
+  private JobManager jobManager;
+
+  /**
+   * Resource resolver the write batches commit with, so that commits can be counted and failed.
+   */
+  private ResourceResolver commitResolver;
+
+  @BeforeEach
+  void setUp() {
+    Stream.of(
+        "/content/dam/payload/b/2.png",
+        "/content/dam/payload/b/1.png",
+        "/content/dam/payload/0.png"
+    ).forEach(path -> context.create().resource(path, "jcr:primaryType", "dam:Asset"));
+
+    commitResolver = mock(ResourceResolver.class);
+    when(commitResolver.hasChanges()).thenReturn(true);
+    renditionGenerator = mock(RenditionGenerator.class);
+    when(renditionGenerator.newWriteBatch(any(), anyInt())).thenAnswer(invocation -> {
+      RenditionWriteBatch writeBatch = new RenditionWriteBatch(commitResolver, invocation.getArgument(1));
+      writeBatches.add(writeBatch);
+      return writeBatch;
+    });
+    when(renditionGenerator.generateRenditions(any(), any(), anyBoolean(), any(), any())).thenAnswer(invocation -> {
+      generated.add(invocation.<Resource>getArgument(0).getPath());
+      return renditionGenerator.isDeferring();
+    });
+    ProcessingProfileIndex processingProfileIndex = mock(ProcessingProfileIndex.class);
+    when(processingProfileIndex.getProcessingProfilePathsToApply(any())).thenReturn(Set.of(PROFILE_PATH));
+    jobManager = mock(JobManager.class);
+
+    context.registerService(RenditionGenerator.class, renditionGenerator);
+    context.registerService(ProcessingProfileIndex.class, processingProfileIndex);
+    context.registerService(JobManager.class, jobManager);
+    context.registerInjectActivateService(new AssetCoalescer());
+  }
+
+  @Test
+  @DisplayName("Given list of an asset and a folder, When execute, Then generate every asset and commit per batch")
+  void testPayloadPaths() {
+    LocalRenditionMakerProcess process = context.registerInjectActivateService(new LocalRenditionMakerProcess(),
+        "batch.size", 2);
+
+    execute(process, "/content/dam/payload/0.png\n/content/dam/payload/b");
+
+    assertEquals(List.of(
+        "/content/dam/payload/0.png",
+        "/content/dam/payload/b/1.png",
+        "/content/dam/payload/b/2.png"
+    ), generated);
+    assertEquals(1, writeBatches.size());
+    assertEquals(2, writeBatches.get(0).getCommits());
+  }
+
+  @Test
+  @DisplayName("Given asynchronous rendering, When execute, Then enqueue a job per asset without generating")
+  void testAsync() {
+    LocalRenditionMakerProcess process = context.registerInjectActivateService(new LocalRenditionMakerProcess(),
+        "async.enabled", true);
+
+    execute(process, "/content/dam/payload");
+
+    assertTrue(generated.isEmpty());
+    verify(jobManager, times(3)).addJob(eq(RenditionJob.TOPIC), anyMap());
+    verify(jobManager).addJob(eq(RenditionJob.TOPIC), argThat(properties ->
+        "/content/dam/payload/b/2.png".equals(properties.get(RenditionJob.PROPERTY_PATH))
+            && RenditionGenerator.Schedule.ALL.name().equals(properties.get(RenditionJob.PROPERTY_SCHEDULE))));
+  }
+
+  @Test
+  @DisplayName("Given early renditions committed, When execute, Then enqueue the deferred renditions")
+  void testDeferredAfterCommit() {
+    when(renditionGenerator.isDeferring()).thenReturn(true);
+    LocalRenditionMakerProcess process = context.registerInjectActivateService(new LocalRenditionMakerProcess());
+
+    execute(process, "/content/dam/payload/0.png");
+
+    verify(renditionGenerator).generateRenditions(any(), any(), anyBoolean(), eq(Set.of(PROFILE_PATH)),
+        eq(RenditionGenerator.Schedule.EARLY));
+    verify(jobManager).addJob(eq(RenditionJob.DEFERRED_TOPIC), argThat(properties ->
+        "/content/dam/payload/0.png".equals(properties.get(RenditionJob.PROPERTY_PATH))));
+  }
+
+  @Test
+  @DisplayName("Given early renditions that could not be committed, When execute, Then do not enqueue the deferred "
+      + "renditions")
+  void testDeferredAfterFailedCommit() throws PersistenceException {
+    when(renditionGenerator.isDeferring()).thenReturn(true);
+    doThrow(new PersistenceException("Conflict")).when(commitResolver).commit();
+    LocalRenditionMakerProcess process = context.registerInjectActivateService(new LocalRenditionMakerProcess());
+
+    execute(process, "/content/dam/payload/0.png");
+
+    assertEquals(List.of("/content/dam/payload/0.png"), generated);
+    verify(jobManager, never()).addJob(anyString(), anyMap());
+  }
+
+  private void execute(LocalRenditionMakerProcess process, String payload) {
+    WorkflowData workflowData = mock(WorkflowData.class);
+    when(workflowData.getPayload()).thenReturn(payload);
+    WorkItem workItem = mock(WorkItem.class);
+    when(workItem.getWorkflowData()).thenReturn(workflowData);
+    WorkflowSession workflowSession = mock(WorkflowSession.class);
+    when(workflowSession.adaptTo(ResourceResolver.class)).thenReturn(context.resourceResolver());
+
+    process.execute(workItem, workflowSession, mock(MetaDataMap.class));
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Dimension;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class PixelBudgetTest {
+
+  private static final RenditionSpec THUMBNAIL = RenditionSpec.builder()
+      .name("thumbnail.jpeg")
+      .wid(100)
+      .hei(100)
+      .build();
+
+  @Test
+  @DisplayName("Given source and rendition, When estimateBytes, Then count decoded source and target pixels")
+  void testEstimateBytes() {
+    Dimension source = new Dimension(1000, 1000);
+
+    assertEquals((1000 * 1000 + 100 * 100) * 4, PixelBudget.estimateBytes(source, THUMBNAIL, false));
+    assertEquals((200 * 200 + 100 * 100) * 4, PixelBudget.estimateBytes(source, THUMBNAIL, true));
+  }
+
+  @Test
+  @DisplayName("Given budget, When fits, Then accept only footprints within the budget")
+  void testFits() {
+    PixelBudget budget = new PixelBudget(10);
+
+    assertTrue(budget.fits(10 * 1024 * 1024));
+    assertFalse(budget.fits(10 * 1024 * 1024 + 1));
+    assertTrue(new PixelBudget(0).fits(Long.MAX_VALUE));
+  }
+
+  @Test
+  @DisplayName("Given oversize render admitted, When another render admitted, Then wait until the first is closed")
+  void testAdmitOversize() throws Exception {
+    PixelBudget budget = new PixelBudget(10);
+    PixelBudget.Admission oversize = budget.admit(Long.MAX_VALUE);
+
+    CompletableFuture<Void> next = CompletableFuture.runAsync(() -> {
+      try {
+        budget.admit(1).close();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+
+    assertThrows(TimeoutException.class, () -> next.get(100, TimeUnit.MILLISECONDS));
+    oversize.close();
+    next.get(5, TimeUnit.SECONDS);
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+
+@ExtendWith(AemContextExtension.class)
+class ProcessingProfileIndexTest {
+
+  private static final String ASSET_PATH = "/content/dam/test/test2/test3/43.png";
+
+  private final AemContext context = new AemContext();
+
+  private ProcessingProfileIndex index;
+
+  @BeforeEach
+  void setUp() {
+    context.load().json("/contentSamples/dam.json", "/content");
+    index = context.registerInjectActivateService(new ProcessingProfileIndex());
+  }
+
+  @Test
+  @DisplayName("Given valid DAM tree, When getProcessingProfilePathsToApply, Then return valid processingProfile paths")
+  void testGetProcessingProfilePathsToApply() {
+    Resource resource = context.resourceResolver().getResource(ASSET_PATH);
+
+    Set<String> actual = index.getProcessingProfilePathsToApply(resource);
+
+    assertEquals(Set.of("/conf/global/settings/dam/processing/profile-from-repo",
+        "/conf/global/settings/dam/processing/profile-from-repo2"), actual);
+  }
+
+  @Test
+  @DisplayName("Given changed folder profile, When getProcessingProfilePathsToApply, Then return cached paths until "
+      + "invalidated")
+  void testInvalidation() throws PersistenceException {
+    Resource resource = context.resourceResolver().getResource(ASSET_PATH);
+    index.getProcessingProfilePathsToApply(resource);
+    String changedPath = "/content/dam/test/test2/jcr:content";
+    Objects.requireNonNull(context.resourceResolver().getResource(changedPath))
+        .adaptTo(ModifiableValueMap.class)
+        .put(ProcessingProfilesUtil.PROCESSING_PROFILE, "/conf/global/settings/dam/processing/profile-added");
+    context.resourceResolver().commit();
+
+    assertEquals(2, index.getProcessingProfilePathsToApply(resource).size());
+
+    index.onChange(List.of(new ResourceChange(ChangeType.CHANGED, changedPath, false)));
+
+    assertEquals(Set.of("/conf/global/settings/dam/processing/profile-from-repo",
+        "/conf/global/settings/dam/processing/profile-from-repo2",
+        "/conf/global/settings/dam/processing/profile-added"), index.getProcessingProfilePathsToApply(resource));
+  }
+
+  @Test
+  @DisplayName("Given registered index, When service properties read, Then listen to changes below the DAM root")
+  void testListenerRegistration() {
+    ServiceReference<ProcessingProfileIndex> reference = context.bundleContext()
+        .getServiceReference(ProcessingProfileIndex.class);
+
+    assertEquals(ProcessingProfilesUtil.DAM_ROOT, reference.getProperty(ResourceChangeListener.PATHS));
+    assertTrue(Arrays.asList((String[]) reference.getProperty(Constants.OBJECTCLASS))
+        .contains(ResourceChangeListener.class.getName()));
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+
+@ExtendWith(AemContextExtension.class)
+class ProcessingProfileRegistryTest {
+
+  private static final String PROFILE_PATH = "/conf/global/settings/dam/processing/profile-from-repo";
+
+  private final AemContext context = new AemContext();
+
+  private ProcessingProfileRegistry registry;
+
+  @BeforeEach
+  void setUp() {
+    context.load().json(
+        "/contentSamples/processingProfiles.json",
+        "/conf/global/settings/dam/processing"
+    );
+    registry = context.registerInjectActivateService(new ProcessingProfileRegistry());
+  }
+
+  @Test
+  @DisplayName("Given ProcessingProfile path, When getRenditionSpecs, Then return compiled renditions")
+  void testGetRenditionSpecs() {
+    List<RenditionSpec> actual = registry.getRenditionSpecs(PROFILE_PATH, context.resourceResolver());
+
+    assertEquals(2, actual.size());
+    RenditionSpec large = actual.get(0);
+    assertEquals("profile-from-repo", large.getProfileName());
+    assertEquals("sample.with.dots.jpeg", large.getName());
+    assertEquals("image/jpeg", large.getMimeType());
+    assertEquals(Map.of(
+        "wid", 1600,
+        "hei", 1600,
+        "fit", "constrain,0",
+        "rszfast", true,
+        "qlt", 85,
+        "fmt", "jpeg"
+    ), large.getInstructions());
+  }
+
+  @Test
+  @DisplayName("Given missing ProcessingProfile path, When getRenditionSpecs, Then return empty list")
+  void testGetRenditionSpecsWithMissingProfile() {
+    assertTrue(registry.getRenditionSpecs("/conf/missing", context.resourceResolver()).isEmpty());
+  }
+
+  @Test
+  @DisplayName("Given changed ProcessingProfile, When getRenditionSpecs, Then return cached specs until invalidated")
+  void testInvalidation() throws PersistenceException {
+    List<RenditionSpec> cached = registry.getRenditionSpecs(PROFILE_PATH, context.resourceResolver());
+    String changedPath = PROFILE_PATH + "/large/jcr:content";
+    Objects.requireNonNull(context.resourceResolver().getResource(changedPath))
+        .adaptTo(ModifiableValueMap.class)
+        .put("wid", 1200L);
+    context.resourceResolver().commit();
+
+    assertSame(cached, registry.getRenditionSpecs(PROFILE_PATH, context.resourceResolver()));
+
+    registry.onChange(List.of(new ResourceChange(ChangeType.CHANGED, changedPath, false)));
+
+    assertEquals(1200, registry.getRenditionSpecs(PROFILE_PATH, context.resourceResolver()).get(0).getWid());
+  }
+
+  @Test
+  @DisplayName("Given registered registry, When service properties read, Then listen to changes below the profile "
+      + "roots")
+  void testListenerRegistration() {
+    ServiceReference<ProcessingProfileRegistry> reference = context.bundleContext()
+        .getServiceReference(ProcessingProfileRegistry.class);
+
+    assertEquals(ProcessingProfileRegistry.PROFILES_ROOT, reference.getProperty(ResourceChangeListener.PATHS));
+    assertTrue(Arrays.asList((String[]) reference.getProperty(Constants.OBJECTCLASS))
+        .contains(ResourceChangeListener.class.getName()));
+  }
+}
@@ -68,6 +68,7 @@ class ProcessingProfileTest {
                         .name("sample.with.dots2.jpeg")
                         .title("sample.with.dots")
                         .includeMimeTypes("image/.*")
+                        .excludeMimeTypes("")
                         .fmt("jpeg")
                         .hei(16002L)
                         .qlt(85L)
@@ -77,6 +78,7 @@ class ProcessingProfileTest {
                         .name("medium2.jpeg")
                         .title("medium")
                         .includeMimeTypes("image/.*")
+                        .excludeMimeTypes("")
                         .fmt("jpeg")
                         .hei(8002L)
                         .qlt(85L)
@@ -92,6 +94,7 @@ class ProcessingProfileTest {
                         .name("sample.with.dots.jpeg")
                         .title("sample.with.dots")
                         .includeMimeTypes("image/.*")
+                        .excludeMimeTypes("")
                         .fmt("jpeg")
                         .hei(1600L)
                         .qlt(85L)
@@ -101,6 +104,7 @@ class ProcessingProfileTest {
                         .name("medium.jpeg")
                         .title("medium")
                         .includeMimeTypes("image/.*")
+                        .excludeMimeTypes("")
                         .fmt("jpeg")
                         .hei(800L)
                         .qlt(85L)
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mysite.local.tools.workflow;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class RenderSupervisorTest {
+
+  private final RenderSupervisor supervisor = new RenderSupervisor(1);
+
+  @AfterEach
+  void tearDown() {
+    supervisor.close();
+  }
+
+  @Test
+  @DisplayName("Given render finishing in time, When run, Then report it finished")
+  void testInTime() {
+    AtomicBoolean rendered = new AtomicBoolean();
+
+    assertTrue(supervisor.run(() -> rendered.set(true), TimeUnit.SECONDS.toNanos(5), () -> true));
+    assertTrue(rendered.get());
+  }
+
+  @Test
+  @DisplayName("Given render exceeding the deadline, When run, Then abandon and interrupt it")
+  void testTimeout() throws InterruptedException {
+    CountDownLatch interrupted = new CountDownLatch(1);
+
+    boolean finished = supervisor.run(() -> {
+      try {
+        TimeUnit.MINUTES.sleep(1);
+      } catch (InterruptedException e) {
+        interrupted.countDown();
+      }
+    }, TimeUnit.MILLISECONDS.toNanos(50), () -> true);
+
+    assertFalse(finished);
+    assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  @DisplayName("Given render finishing while abandoned, When run, Then wait for it and report it finished")
+  void testFinishedMeanwhile() {
+    AtomicBoolean rendered = new AtomicBoolean();
+
+    boolean finished = supervisor.run(() -> {
+      try {
+        TimeUnit.MILLISECONDS.sleep(200);
+      } catch (InterruptedException e) {
+        return;
+      }
+      rendered.set(true);
+    }, TimeUnit.MILLISECONDS.toNanos(10), () -> false);
+
+    assertTrue(finished);
+    assertTrue(rendered.get());
+  }
+
+  @Test
+  @DisplayName("Given every thread held by an abandoned render, When run, Then abandon the waiting render and run it "
+      + "interrupted once the thread is free")
+  void testBoundedThreads() throws InterruptedException {
+    CountDownLatch release = new CountDownLatch(1);
+    supervisor.run(() -> {
+      boolean released = false;
+      while (!released) {
+        try {
+          release.await();
+          released = true;
+        } catch (InterruptedException e) {
+          // ignores the interrupt, as some decoders do
+        }
+      }
+    }, TimeUnit.MILLISECONDS.toNanos(10), () -> true);
+    CountDownLatch waitingRun = new CountDownLatch(1);
+    AtomicBoolean interrupted = new AtomicBoolean();
+
+    boolean finished = supervisor.run(() -> {
+      interrupted.set(Thread.currentThread().isInterrupted());
+      waitingRun.countDown();
+    }, TimeUnit.MILLISECONDS.toNanos(50), () -> true);
+    release.countDown();
+
+    assertFalse(finished);
+    assertTrue(waitingRun.await(5, TimeUnit.SECONDS));
+    assertTrue(interrupted.get());
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mysite.local.tools.workflow;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RenditionCacheTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  @DisplayName("Given rendition read to the end, When closed, Then serve it from the cache")
+  void testCache() throws IOException {
+    RenditionCache cache = new RenditionCache(directory, 1000);
+    byte[] rendition = bytes(100);
+
+    assertNull(cache.get("a"));
+    assertArrayEquals(rendition, readThrough(cache, "a", rendition));
+
+    assertTrue(cache.contains("a"));
+    assertEquals(100, cache.getSize());
+    try (InputStream cached = cache.get("a")) {
+      assertArrayEquals(rendition, IOUtils.toByteArray(cached));
+    }
+  }
+
+  @Test
+  @DisplayName("Given rendition not read to the end, When closed, Then do not cache it")
+  void testIncompleteRead() throws IOException {
+    RenditionCache cache = new RenditionCache(directory, 1000);
+
+    try (InputStream stream = cache.caching("a", new ByteArrayInputStream(bytes(100)))) {
+      IOUtils.read(stream, new byte[50]);
+    }
+
+    assertFalse(cache.contains("a"));
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  @DisplayName("Given full cache, When rendition added, Then evict the least recently used ones")
+  void testEvict() throws IOException {
+    RenditionCache cache = new RenditionCache(directory, 250);
+    readThrough(cache, "a", bytes(100));
+    readThrough(cache, "b", bytes(100));
+    cache.get("a").close();
+
+    readThrough(cache, "c", bytes(100));
+
+    assertTrue(cache.contains("a"));
+    assertFalse(cache.contains("b"));
+    assertTrue(cache.contains("c"));
+    assertEquals(200, cache.getSize());
+  }
+
+  @Test
+  @DisplayName("Given cache resized below its content, When resize, Then evict the least recently used ones")
+  void testResize() throws IOException {
+    RenditionCache cache = new RenditionCache(directory, 1000);
+    readThrough(cache, "a", bytes(100));
+    readThrough(cache, "b", bytes(100));
+
+    cache.resize(150);
+
+    assertFalse(cache.contains("a"));
+    assertTrue(cache.contains("b"));
+    assertEquals(100, cache.getSize());
+    assertFalse(Files.exists(directory.resolve("a")));
+  }
+
+  @Test
+  @DisplayName("Given renditions cached by a previous run, When created, Then index them")
+  void testReload() throws IOException {
+    readThrough(new RenditionCache(directory, 1000), "a", bytes(100));
+
+    RenditionCache cache = new RenditionCache(directory, 1000);
+
+    assertTrue(cache.contains("a"));
+    assertEquals(100, cache.getSize());
+  }
+
+  private static byte[] readThrough(RenditionCache cache, String key, byte[] rendition) throws IOException {
+    try (InputStream stream = cache.caching(key, new ByteArrayInputStream(rendition))) {
+      return IOUtils.toByteArray(stream);
+    }
+  }
+
+  private static byte[] bytes(int length) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = (byte) i;
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.mysite.local.tools.workflow.RenditionCascade.Step;
+import java.util.List;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class RenditionCascadeTest {
+
+  private final RenditionCascade cascade = new RenditionCascade(90);
+
+  @Test
+  @DisplayName("Given renditions of a profile, When plan, Then render each from the nearest larger rendition")
+  void testPlan() {
+    RenditionSpec small = rendition("small.png", 100, 100, 85);
+    RenditionSpec medium = rendition("medium.png", 800, 800, 85);
+    RenditionSpec large = rendition("large.png", 1600, 1600, 85);
+
+    List<Step> actual = cascade.plan(List.of(small, large, medium));
+
+    assertEquals(List.of(
+        new Step(large, null),
+        new Step(medium, large),
+        new Step(small, medium)
+    ), actual);
+  }
+
+  @Test
+  @DisplayName("Given renditions below quality threshold, When plan, Then render them from the original")
+  void testPlanWithLowQualitySource() {
+    RenditionSpec small = rendition("small.jpeg", 100, 100, 85);
+    RenditionSpec medium = rendition("medium.jpeg", 800, 800, 85);
+    RenditionSpec large = rendition("large.png", 1600, 1600, 85);
+
+    List<Step> actual = cascade.plan(List.of(small, medium, large));
+
+    assertEquals(List.of(
+        new Step(large, null),
+        new Step(medium, large),
+        new Step(small, large)
+    ), actual);
+  }
+
+  @Test
+  @DisplayName("Given rendition not contained in larger one, When plan, Then render it from the original")
+  void testPlanWithDifferentAspectRatio() {
+    RenditionSpec wide = rendition("wide.png", 1600, 100, 85);
+    RenditionSpec tall = rendition("tall.png", 100, 800, 85);
+
+    List<Step> actual = cascade.plan(List.of(tall, wide));
+
+    assertEquals(List.of(
+        new Step(wide, null),
+        new Step(tall, null)
+    ), actual);
+  }
+
+  @Test
+  @DisplayName("Given WebP and palette PNG renditions, When plan, Then use only WebP of sufficient quality as source")
+  void testPlanWithLossyFormats() {
+    RenditionSpec small = rendition("small.jpeg", 100, 100, 85);
+    RenditionSpec medium = rendition("medium.webp", 400, 400, 85);
+    RenditionSpec large = rendition("large.webp", 800, 800, 95);
+    RenditionSpec palette = RenditionSpec.builder()
+        .name("palette.png")
+        .mimeType("image/png")
+        .wid(1600)
+        .hei(1600)
+        .qlt(100)
+        .palette(true)
+        .build();
+
+    List<Step> actual = cascade.plan(List.of(small, medium, large, palette));
+
+    assertEquals(List.of(
+        new Step(palette, null),
+        new Step(large, null),
+        new Step(medium, large),
+        new Step(small, large)
+    ), actual);
+  }
+
+  @Test
+  @DisplayName("Given WebP renditions below a larger JPEG, When plan, Then render them only from sources with alpha")
+  void testPlanWithAlpha() {
+    RenditionSpec large = rendition("large.jpeg", 1600, 1600, 95);
+    RenditionSpec medium = rendition("medium.webp", 800, 800, 90);
+    RenditionSpec small = rendition("small.webp", 100, 100, 85);
+    RenditionSpec thumbnail = rendition("thumbnail.jpeg", 50, 50, 85);
+
+    List<Step> actual = cascade.plan(List.of(thumbnail, small, medium, large));
+
+    assertEquals(List.of(
+        new Step(large, null),
+        new Step(medium, null),
+        new Step(small, medium),
+        new Step(thumbnail, medium)
+    ), actual);
+  }
+
+  private static RenditionSpec rendition(String name, int width, int height, int quality) {
+    return RenditionSpec.builder()
+        .name(name)
+        .mimeType("image/" + StringUtils.substringAfterLast(name, "."))
+        .wid(width)
+        .hei(height)
+        .qlt(quality)
+        .build();
+  }
+}
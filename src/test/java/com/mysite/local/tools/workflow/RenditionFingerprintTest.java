@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.day.cq.dam.api.Asset;
+import com.day.cq.dam.api.Rendition;
+import java.util.Map;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class RenditionFingerprintTest {
+
+  private static final RenditionSpec SPEC = RenditionSpec.builder()
+      .name("medium.jpeg")
+      .fingerprint("spec")
+      .build();
+
+  private Asset asset;
+
+  @BeforeEach
+  void setUp() {
+    asset = mock(Asset.class);
+    when(asset.getMetadataValue("dam:sha1")).thenReturn("original");
+  }
+
+  @Test
+  @DisplayName("Given rendition with matching fingerprint, When isUpToDate, Then return true")
+  void testIsUpToDate() {
+    RenditionFingerprint fingerprint = RenditionFingerprint.forAsset(asset);
+    mockStoredFingerprint(fingerprint.of(SPEC));
+
+    assertTrue(fingerprint.isUpToDate(asset, SPEC));
+  }
+
+  @Test
+  @DisplayName("Given rendition of changed original, When isUpToDate, Then return false")
+  void testIsUpToDateWithChangedOriginal() {
+    String previous = RenditionFingerprint.forAsset(asset).of(SPEC);
+    when(asset.getMetadataValue("dam:sha1")).thenReturn("changed");
+    RenditionFingerprint fingerprint = RenditionFingerprint.forAsset(asset);
+    mockStoredFingerprint(previous);
+
+    assertNotEquals(previous, fingerprint.of(SPEC));
+    assertFalse(fingerprint.isUpToDate(asset, SPEC));
+  }
+
+  @Test
+  @DisplayName("Given original without identity, When isUpToDate, Then return false")
+  void testIsUpToDateWithoutIdentity() {
+    when(asset.getMetadataValue("dam:sha1")).thenReturn(null);
+    RenditionFingerprint fingerprint = RenditionFingerprint.forAsset(asset);
+
+    assertNull(fingerprint.of(SPEC));
+    assertFalse(fingerprint.isUpToDate(asset, SPEC));
+  }
+
+  private void mockStoredFingerprint(String storedFingerprint) {
+    Resource metadata = mock(Resource.class);
+    when(metadata.getValueMap())
+        .thenReturn(new ValueMapDecorator(Map.of(RenditionFingerprint.FINGERPRINT, storedFingerprint)));
+    Rendition rendition = mock(Rendition.class);
+    when(rendition.getChild("jcr:content/metadata")).thenReturn(metadata);
+    when(asset.getRendition(SPEC.getName())).thenReturn(rendition);
+  }
+}
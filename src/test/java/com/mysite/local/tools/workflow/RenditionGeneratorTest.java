@@ -0,0 +1,534 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.day.cq.dam.api.Asset;
+import com.day.cq.dam.api.DamConstants;
+import com.day.cq.dam.api.Rendition;
+import com.day.cq.dam.api.renditions.RenditionMaker;
+import com.day.cq.dam.api.renditions.RenditionTemplate;
+import com.day.crx.JcrConstants;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import javax.imageio.ImageIO;
+import lombok.Setter;
+import lombok.Value;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.testing.mock.osgi.MockOsgi;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+@ExtendWith(AemContextExtension.class)
+class RenditionGeneratorTest {
+
+  private static final String PROFILES_ROOT = "/conf/global/settings/dam/processing";
+
+  private static final String ASSET_PATH = "/content/dam/generator/original.jpeg";
+
+  private static final int ORIGINAL_WIDTH = 400;
+
+  private static final int ORIGINAL_HEIGHT = 300;
+
+  // renditions are stored with their metadata node, which needs a JCR backed resource resolver
+  private final AemContext context = new AemContext(ResourceResolverType.JCR_MOCK);
+
+  private final CountingRenderEngine renderEngine = new CountingRenderEngine();
+
+  @TempDir
+  Path cacheDirectory;
+
+  private String profilePath;
+
+  private Resource assetResource;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    context.registerService(MetricsService.class, MetricsService.NOOP);
+    context.registerService(RenditionMaker.class, newRenditionMaker());
+    context.registerService(RenderEngine.class, renderEngine);
+    context.registerInjectActivateService(new RenditionMetrics());
+    context.registerInjectActivateService(new ProcessingProfileRegistry());
+    context.registerInjectActivateService(new ProcessingProfileIndex());
+    profilePath = createProfile("generator");
+    assetResource = createAsset(ASSET_PATH);
+  }
+
+  @Test
+  @DisplayName("Given cascade supervised by a deadline on a single render thread, When generateRenditions, "
+      + "Then commit the first wave before rendering the second one from it")
+  void testCascadeWithDeadline() {
+    createRendition(profilePath, "large", 200, 90);
+    createRendition(profilePath, "small", 100, 90);
+    RenditionGenerator generator = context.registerInjectActivateService(new RenditionGenerator(),
+        "cascade.enabled", true,
+        "render.threads", 1,
+        "deadline.renditionSeconds", 60);
+    RenditionWriteBatch writeBatch = generator.newWriteBatch(context.resourceResolver(), 1);
+
+    generator.generateRenditions(assetResource, writeBatch, false, Set.of(profilePath));
+
+    assertEquals(1, writeBatch.getCommits());
+    assertEquals(List.of(
+        new Render("large.jpeg", ASSET_PATH, true),
+        new Render("small.jpeg", ASSET_PATH + "/jcr:content/renditions/large.jpeg", true)),
+        renderEngine.getRenders());
+    assertRenditions(assetResource, "large.jpeg", "small.jpeg");
+  }
+
+  @Test
+  @DisplayName("Given cascade on a render pool, When generateRenditions, Then render the second wave from the "
+      + "committed first wave")
+  void testCascadeOnRenderPool() {
+    createRendition(profilePath, "large", 200, 90);
+    createRendition(profilePath, "medium", 150, 90);
+    createRendition(profilePath, "small", 100, 90);
+    RenditionGenerator generator = context.registerInjectActivateService(new RenditionGenerator(),
+        "cascade.enabled", true,
+        "render.threads", 2);
+    RenditionWriteBatch writeBatch = generator.newWriteBatch(context.resourceResolver(), 1);
+
+    generator.generateRenditions(assetResource, writeBatch, false, Set.of(profilePath));
+
+    assertEquals(2, writeBatch.getCommits());
+    assertEquals(List.of(
+        new Render("large.jpeg", ASSET_PATH, true),
+        new Render("medium.jpeg", ASSET_PATH + "/jcr:content/renditions/large.jpeg", true),
+        new Render("small.jpeg", ASSET_PATH + "/jcr:content/renditions/medium.jpeg", true)),
+        renderEngine.getRenders());
+    assertRenditions(assetResource, "large.jpeg", "medium.jpeg", "small.jpeg");
+  }
+
+  @Test
+  @DisplayName("Given renditions on a render pool, When generateRenditions, Then render each once and store all "
+      + "of them")
+  void testRenderPool() {
+    createRendition(profilePath, "large", 200, 85);
+    createRendition(profilePath, "medium", 150, 85);
+    createRendition(profilePath, "small", 100, 85);
+    RenditionGenerator generator = context.registerInjectActivateService(new RenditionGenerator(),
+        "render.threads", 3);
+    RenditionWriteBatch writeBatch = generator.newWriteBatch(context.resourceResolver(), 1);
+
+    generator.generateRenditions(assetResource, writeBatch, false, Set.of(profilePath));
+
+    assertEquals(List.of("large.jpeg", "medium.jpeg", "small.jpeg"), renderEngine.getRenditionNames());
+    assertRenditions(assetResource, "large.jpeg", "medium.jpeg", "small.jpeg");
+  }
+
+  @Test
+  @DisplayName("Given configuration modified while renditions are rendered on the pool, When generateRenditions, "
+      + "Then finish the run on the pool it started with")
+  void testModifiedDuringRender() {
+    createRendition(profilePath, "large", 200, 85);
+    createRendition(profilePath, "medium", 150, 85);
+    createRendition(profilePath, "small", 100, 85);
+    RenditionGenerator generator = context.registerInjectActivateService(new RenditionGenerator(),
+        "render.threads", 2);
+    AtomicBoolean modified = new AtomicBoolean();
+    renderEngine.setOnRender(() -> {
+      if (modified.compareAndSet(false, true)) {
+        MockOsgi.modified(generator, context.bundleContext(), Map.<String, Object>of("render.threads", 1));
+      }
+    });
+    RenditionWriteBatch writeBatch = generator.newWriteBatch(context.resourceResolver(), 1);
+
+    generator.generateRenditions(assetResource, writeBatch, false, Set.of(profilePath));
+
+    assertTrue(modified.get());
+    assertEquals(List.of("large.jpeg", "medium.jpeg", "small.jpeg"), renderEngine.getRenditionNames());
+    assertRenditions(assetResource, "large.jpeg", "medium.jpeg", "small.jpeg");
+  }
+
+  @Test
+  @DisplayName("Given early rendition size, When generateRenditions of the early schedule, Then render only the small "
+      + "renditions and leave the others for the deferred stage")
+  void testEarlySchedule() {
+    createRendition(profilePath, "large", 200, 85);
+    createRendition(profilePath, "small", 100, 85);
+    RenditionGenerator generator = context.registerInjectActivateService(new RenditionGenerator(),
+        "schedule.earlyMaxSize", 150);
+    RenditionWriteBatch writeBatch = generator.newWriteBatch(context.resourceResolver(), 1);
+
+    boolean deferred = generator.generateRenditions(assetResource, writeBatch, false, Set.of(profilePath),
+        RenditionGenerator.Schedule.EARLY);
+
+    assertTrue(deferred);
+    assertEquals(List.of("small.jpeg"), renderEngine.getRenditionNames());
+    assertRenditions(assetResource, "small.jpeg");
+  }
+
+  @Test
+  @DisplayName("Given early rendition size, When generateRenditions of the deferred schedule, Then render only the "
+      + "large renditions")
+  void testDeferredSchedule() {
+    createRendition(profilePath, "large", 200, 85);
+    createRendition(profilePath, "small", 100, 85);
+    RenditionGenerator generator = context.registerInjectActivateService(new RenditionGenerator(),
+        "schedule.earlyMaxSize", 150);
+    RenditionWriteBatch writeBatch = generator.newWriteBatch(context.resourceResolver(), 1);
+
+    boolean deferred = generator.generateRenditions(assetResource, writeBatch, false, Set.of(profilePath),
+        RenditionGenerator.Schedule.DEFERRED);
+
+    assertFalse(deferred);
+    assertEquals(List.of("large.jpeg"), renderEngine.getRenditionNames());
+    assertRenditions(assetResource, "large.jpeg");
+  }
+
+  @Test
+  @DisplayName("Given large renditions up to date, When generateRenditions of the early schedule, Then render the "
+      + "outdated small ones and leave nothing for the deferred stage")
+  void testEarlyScheduleWithDeferredUpToDate() {
+    createRendition(profilePath, "large", 200, 85);
+    createRendition(profilePath, "small", 100, 85);
+    RenditionGenerator generator = context.registerInjectActivateService(new RenditionGenerator(),
+        "schedule.earlyMaxSize", 150);
+    RenditionWriteBatch writeBatch = generator.newWriteBatch(context.resourceResolver(), 1);
+    generator.generateRenditions(assetResource, writeBatch, false, Set.of(profilePath),
+        RenditionGenerator.Schedule.ALL);
+    writeBatch.commit();
+    assetResource.adaptTo(Asset.class).removeRendition("small.jpeg");
+
+    boolean deferred = generator.generateRenditions(assetResource, writeBatch, false, Set.of(profilePath),
+        RenditionGenerator.Schedule.EARLY);
+
+    assertFalse(deferred);
+    assertEquals(List.of("large.jpeg", "small.jpeg", "small.jpeg"), renderEngine.getRenditionNames());
+    assertRenditions(assetResource, "large.jpeg", "small.jpeg");
+  }
+
+  @Test
+  @DisplayName("Given overlapping profiles with identical renditions, When generateRenditions, Then render them once "
+      + "and store a copy under every name")
+  void testDuplicateRenditions() {
+    createRendition(profilePath, "medium", 200, 85);
+    createRendition(profilePath, "small", 100, 85);
+    String otherProfilePath = createProfile("other");
+    createRendition(otherProfilePath, "other-medium", 200, 85);
+    createRendition(otherProfilePath, "other-small", 100, 70);
+    RenditionGenerator generator = context.registerInjectActivateService(new RenditionGenerator());
+    RenditionWriteBatch writeBatch = generator.newWriteBatch(context.resourceResolver(), 1);
+
+    generator.generateRenditions(assetResource, writeBatch, false, Set.of(profilePath, otherProfilePath));
+
+    assertEquals(3, renderEngine.getRenders().size());
+    assertEquals(1, renderEngine.getRenditionNames().stream()
+        .filter(name -> name.endsWith("medium.jpeg"))
+        .count());
+    assertRenditions(assetResource, "medium.jpeg", "small.jpeg", "other-medium.jpeg", "other-small.jpeg");
+    ValueMap copyMetadata = getRenditionMetadata(assetResource, "other-medium.jpeg");
+    assertEquals(200, copyMetadata.get(RenditionWriteBatch.IMAGE_WIDTH, 0));
+    assertNotNull(copyMetadata.get(RenditionFingerprint.FINGERPRINT, String.class));
+  }
+
+  @Test
+  @DisplayName("Given renditions not smaller than the original and SKIP policy, When generateRenditions, Then render "
+      + "only the smaller ones")
+  void testUpscaleSkip() {
+    generateWithUpscalePolicy(RenditionGenerator.UpscalePolicy.SKIP);
+
+    assertEquals(List.of("small.jpeg"), renderEngine.getRenditionNames());
+    assertRenditions(assetResource, "small.jpeg");
+  }
+
+  @Test
+  @DisplayName("Given renditions not smaller than the original and COPY policy, When generateRenditions, Then store "
+      + "the original as those of its format and render the others once")
+  void testUpscaleCopy() {
+    generateWithUpscalePolicy(RenditionGenerator.UpscalePolicy.COPY);
+
+    assertEquals(List.of("large.png", "small.jpeg"), renderEngine.getRenditionNames());
+    assertRenditions(assetResource, "small.jpeg", "large.jpeg", "huge.jpeg", "large.png", "huge.png");
+    Asset asset = assetResource.adaptTo(Asset.class);
+    assertEquals(asset.getOriginal().getSize(), asset.getRendition("huge.jpeg").getSize());
+    assertEquals(ORIGINAL_WIDTH, getRenditionMetadata(assetResource, "huge.jpeg")
+        .get(RenditionWriteBatch.IMAGE_WIDTH, 0));
+    assertEquals(ORIGINAL_WIDTH, getRenditionMetadata(assetResource, "huge.png")
+        .get(RenditionWriteBatch.IMAGE_WIDTH, 0));
+  }
+
+  @Test
+  @DisplayName("Given renditions not smaller than the original and REUSE policy, When generateRenditions, Then render "
+      + "them once per format and store the result under every name")
+  void testUpscaleReuse() {
+    generateWithUpscalePolicy(RenditionGenerator.UpscalePolicy.REUSE);
+
+    assertEquals(List.of("large.jpeg", "large.png", "small.jpeg"), renderEngine.getRenditionNames());
+    assertRenditions(assetResource, "small.jpeg", "large.jpeg", "huge.jpeg", "large.png", "huge.png");
+    assertEquals(ORIGINAL_WIDTH, getRenditionMetadata(assetResource, "huge.jpeg")
+        .get(RenditionWriteBatch.IMAGE_WIDTH, 0));
+  }
+
+  @Test
+  @DisplayName("Given lazy rendition of another original, When generateRenditions, Then remove it")
+  void testOutdatedLazyRendition() throws IOException {
+    createRendition(profilePath, "lazy", 200, 85, "lazy", true);
+    addRendition(assetResource, "lazy.jpeg");
+    RenditionGenerator generator = context.registerInjectActivateService(new RenditionGenerator());
+    RenditionWriteBatch writeBatch = generator.newWriteBatch(context.resourceResolver(), 1);
+
+    generator.generateRenditions(assetResource, writeBatch, false, Set.of(profilePath));
+
+    assertTrue(renderEngine.getRenders().isEmpty());
+    assertRenditions(assetResource);
+  }
+
+  @Test
+  @DisplayName("Given lazy rendition of an original that cannot be identified, When generateRenditions, Then keep it")
+  void testLazyRenditionOfUnidentifiedOriginal() throws IOException {
+    createRendition(profilePath, "lazy", 200, 85, "lazy", true);
+    Resource unidentifiedResource = createAsset("/content/dam/generator/unidentified.jpeg", null);
+    addRendition(unidentifiedResource, "lazy.jpeg");
+    RenditionGenerator generator = context.registerInjectActivateService(new RenditionGenerator());
+    RenditionWriteBatch writeBatch = generator.newWriteBatch(context.resourceResolver(), 1);
+
+    generator.generateRenditions(unidentifiedResource, writeBatch, false, Set.of(profilePath));
+
+    assertTrue(renderEngine.getRenders().isEmpty());
+    assertRenditions(unidentifiedResource, "lazy.jpeg");
+  }
+
+  @Test
+  @DisplayName("Given lazy and eager renditions, When isLazyRendition, Then accept only the lazy one without rendering")
+  void testIsLazyRendition() {
+    createRendition(profilePath, "lazy", 200, 85, "lazy", true);
+    createRendition(profilePath, "large", 200, 90);
+    RenditionGenerator generator = context.registerInjectActivateService(new RenditionGenerator());
+
+    assertTrue(generator.isLazyRendition(assetResource, "lazy.jpeg"));
+    assertFalse(generator.isLazyRendition(assetResource, "large.jpeg"));
+    assertFalse(generator.isLazyRendition(assetResource, "missing.jpeg"));
+    assertTrue(renderEngine.getRenders().isEmpty());
+  }
+
+  @Test
+  @DisplayName("Given duplicate original cascaded through renditions of other names, When generateRenditions, "
+      + "Then serve every rendition from the cache")
+  void testCacheOfRenamedSource() throws IOException {
+    createRendition(profilePath, "large", 200, 90);
+    createRendition(profilePath, "small", 100, 90);
+    String otherProfilePath = createProfile("other");
+    createRendition(otherProfilePath, "other-large", 200, 90);
+    createRendition(otherProfilePath, "other-small", 100, 90);
+    Resource duplicateResource = createAsset("/content/dam/generator/duplicate.jpeg");
+    RenditionGenerator generator = context.registerInjectActivateService(new RenditionGenerator(),
+        "cascade.enabled", true,
+        "cache.sizeMb", 1,
+        "cache.directory", cacheDirectory.toString());
+    RenditionWriteBatch writeBatch = generator.newWriteBatch(context.resourceResolver(), 1);
+
+    generator.generateRenditions(assetResource, writeBatch, false, Set.of(profilePath));
+    generator.generateRenditions(duplicateResource, writeBatch, false, Set.of(otherProfilePath));
+
+    assertEquals(List.of(
+        new Render("large.jpeg", ASSET_PATH, true),
+        new Render("small.jpeg", ASSET_PATH + "/jcr:content/renditions/large.jpeg", true)),
+        renderEngine.getRenders());
+    assertRenditions(duplicateResource, "other-large.jpeg", "other-small.jpeg");
+  }
+
+  /**
+   * Generates a rendition smaller than the original and JPEG and PNG renditions with boxes not smaller than it.
+   */
+  private void generateWithUpscalePolicy(RenditionGenerator.UpscalePolicy upscalePolicy) {
+    createRendition(profilePath, "small", 100, 85);
+    createRendition(profilePath, "large", 1600, 85);
+    createRendition(profilePath, "huge", 2000, 85);
+    createRendition(profilePath, "large-png", 1600, 85, "fmt", "png", "name", "large.png");
+    createRendition(profilePath, "huge-png", 2000, 85, "fmt", "png", "name", "huge.png");
+    RenditionGenerator generator = context.registerInjectActivateService(new RenditionGenerator(),
+        "upscale.policy", upscalePolicy.name());
+    RenditionWriteBatch writeBatch = generator.newWriteBatch(context.resourceResolver(), 1);
+
+    generator.generateRenditions(assetResource, writeBatch, false, Set.of(profilePath));
+  }
+
+  private String createProfile(String name) {
+    String path = PROFILES_ROOT + "/" + name;
+    context.create().resource(path, JcrConstants.JCR_PRIMARYTYPE, "cq:Page");
+    context.create().resource(path + "/" + JcrConstants.JCR_CONTENT,
+        JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED,
+        "jcr:title", name,
+        "sling:resourceType", "dam/processing/profile");
+    return path;
+  }
+
+  /**
+   * Asset of the same original as all other assets, identified by its {@code dam:sha1}.
+   */
+  private Resource createAsset(String path) throws IOException {
+    return createAsset(path, "original");
+  }
+
+  /**
+   * Asset of the original, not identified when the {@code dam:sha1} is {@code null}.
+   */
+  private Resource createAsset(String path, String sha1) throws IOException {
+    Map<String, Object> metadata = new HashMap<>();
+    metadata.put(DamConstants.TIFF_IMAGEWIDTH, (long) ORIGINAL_WIDTH);
+    metadata.put(DamConstants.TIFF_IMAGELENGTH, (long) ORIGINAL_HEIGHT);
+    if (sha1 != null) {
+      metadata.put("dam:sha1", sha1);
+    }
+    context.create().asset(path, new ByteArrayInputStream(encode(ORIGINAL_WIDTH, ORIGINAL_HEIGHT, OutputFormat.JPEG)),
+        "image/jpeg", metadata);
+    return context.resourceResolver().getResource(path);
+  }
+
+  private static void addRendition(Resource assetResource, String renditionName) throws IOException {
+    assetResource.adaptTo(Asset.class).addRendition(renditionName,
+        new ByteArrayInputStream(encode(200, 150, OutputFormat.JPEG)), "image/jpeg");
+  }
+
+  private void createRendition(String profilePath, String name, long size, long quality, Object... properties) {
+    String renditionPath = profilePath + "/" + name;
+    context.create().resource(renditionPath, JcrConstants.JCR_PRIMARYTYPE, "cq:Page");
+    Map<String, Object> content = new HashMap<>();
+    content.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED);
+    content.put("sling:resourceType", "dam/processing/profile/rendition");
+    content.put("jcr:title", name);
+    content.put("name", name + ".jpeg");
+    content.put("includeMimeTypes", "image/.*");
+    content.put("excludeMimeTypes", "");
+    content.put("fmt", "jpeg");
+    content.put("wid", size);
+    content.put("hei", size);
+    content.put("qlt", quality);
+    for (int i = 0; i < properties.length; i += 2) {
+      content.put((String) properties[i], properties[i + 1]);
+    }
+    context.create().resource(renditionPath + "/" + JcrConstants.JCR_CONTENT, content);
+  }
+
+  private static void assertRenditions(Resource assetResource, String... names) {
+    Asset asset = assetResource.adaptTo(Asset.class);
+    assertEquals(Set.of(names), asset.getRenditions().stream()
+        .map(Rendition::getName)
+        .filter(name -> !DamConstants.ORIGINAL_FILE.equals(name))
+        .collect(Collectors.toSet()));
+  }
+
+  private static ValueMap getRenditionMetadata(Resource assetResource, String renditionName) {
+    Resource metadata = assetResource.getChild("jcr:content/renditions/" + renditionName + "/jcr:content/"
+        + RenditionWriteBatch.METADATA_NODE);
+    assertNotNull(metadata);
+    return metadata.getValueMap();
+  }
+
+  private static RenditionMaker newRenditionMaker() {
+    RenditionMaker renditionMaker = mock(RenditionMaker.class);
+    when(renditionMaker.generateRenditions(any(Asset.class), any())).thenAnswer(invocation -> {
+      Asset asset = invocation.getArgument(0);
+      return Arrays.stream(invocation.getArguments(), 1, invocation.getArguments().length)
+          .map(template -> ((RenditionTemplate) template).apply(asset))
+          .collect(Collectors.toList());
+    });
+    return renditionMaker;
+  }
+
+  private static byte[] encode(int width, int height, OutputFormat format) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), format.getGfxName(), output);
+    return output.toByteArray();
+  }
+
+  /**
+   * Render of a rendition from a source, and whether the source was visible to the resource resolver it was rendered
+   * with.
+   */
+  @Value
+  private static class Render {
+
+    String renditionName;
+
+    String sourcePath;
+
+    boolean sourceFound;
+  }
+
+  /**
+   * Stands in for Gfx, recording every render and returning a blank image of the rendition box.
+   */
+  private static class CountingRenderEngine implements RenderEngine {
+
+    private final List<Render> renders = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Runs on every render before it returns.
+     */
+    @Setter
+    private volatile Runnable onRender = () -> { };
+
+    @Override
+    public String getName() {
+      return GfxRenderEngine.NAME;
+    }
+
+    @Override
+    public InputStream render(String sourcePath, RenditionSpec spec, ResourceResolver resourceResolver)
+        throws IOException {
+      renders.add(new Render(spec.getName(), sourcePath, resourceResolver.getResource(sourcePath) != null));
+      onRender.run();
+      return new ByteArrayInputStream(encode(Math.min(spec.getWid(), ORIGINAL_WIDTH),
+          Math.min(spec.getHei(), ORIGINAL_HEIGHT), spec.getOutputFormat().orElse(OutputFormat.JPEG)));
+    }
+
+    List<Render> getRenders() {
+      return new ArrayList<>(renders);
+    }
+
+    /**
+     * Names of the rendered renditions in alphabetical order, whatever the order they were rendered in.
+     */
+    List<String> getRenditionNames() {
+      return getRenders().stream()
+          .map(Render::getRenditionName)
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+}
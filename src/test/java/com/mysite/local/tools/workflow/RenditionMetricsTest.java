@@ -0,0 +1,132 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import java.util.concurrent.TimeUnit;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.TabularData;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(AemContextExtension.class)
+class RenditionMetricsTest {
+
+  private static final RenditionSpec SPEC = RenditionSpec.builder()
+      .profileName("profile")
+      .name("medium.jpeg")
+      .mimeType("image/jpeg")
+      .build();
+
+  private final AemContext context = new AemContext();
+
+  private RenditionMetrics metrics;
+
+  @BeforeEach
+  void setUp() {
+    context.registerService(MetricsService.class, MetricsService.NOOP);
+    metrics = context.registerInjectActivateService(new RenditionMetrics());
+  }
+
+  @Test
+  @DisplayName("Given recorded render times, When getStages, Then report count, mean and percentiles in millis")
+  void testGetStages() throws OpenDataException {
+    for (int i = 1; i <= 100; i++) {
+      metrics.record(RenditionMetrics.Stage.RENDER, SPEC, TimeUnit.MILLISECONDS.toNanos(i));
+    }
+
+    CompositeData render = metrics.getStages().get(new Object[]{"render"});
+
+    assertEquals(100L, render.get("count"));
+    assertEquals(50.5, (double) render.get("meanMs"), 0.001);
+    assertInBucket(50, (double) render.get("p50Ms"));
+    assertInBucket(95, (double) render.get("p95Ms"));
+    assertEquals(100.0, (double) render.get("maxMs"), 0.001);
+  }
+
+  @Test
+  @DisplayName("Given rendered, skipped, failed and abandoned renditions, When getRenditions, Then count them per "
+      + "rendition")
+  void testGetRenditions() throws OpenDataException {
+    metrics.recordRendered(SPEC, 1000);
+    metrics.recordRendered(SPEC, 500);
+    metrics.recordSkipped(SPEC);
+    metrics.recordError(SPEC);
+    metrics.recordAbandoned(SPEC);
+    metrics.recordCache(SPEC, true);
+    metrics.recordCache(SPEC, false);
+    metrics.recordCache(SPEC, false);
+
+    TabularData renditions = metrics.getRenditions();
+    CompositeData medium = renditions.get(new Object[]{"profile", "medium.jpeg", "jpeg"});
+
+    assertEquals(1, renditions.size());
+    assertEquals("jpeg", medium.get("format"));
+    assertEquals(2L, medium.get("rendered"));
+    assertEquals(1L, medium.get("skipped"));
+    assertEquals(1L, medium.get("errors"));
+    assertEquals(1L, medium.get("abandoned"));
+    assertEquals(1L, medium.get("cacheHits"));
+    assertEquals(2L, medium.get("cacheMisses"));
+    assertEquals(1500L, medium.get("bytes"));
+  }
+
+  @Test
+  @DisplayName("Given rendition whose format changed, When getRenditions, Then report a row per format")
+  void testGetRenditionsOfChangedFormat() throws OpenDataException {
+    metrics.recordRendered(SPEC, 1000);
+    metrics.recordRendered(RenditionSpec.builder()
+        .profileName("profile")
+        .name("medium.jpeg")
+        .mimeType("image/webp")
+        .build(), 500);
+
+    TabularData renditions = metrics.getRenditions();
+
+    assertEquals(2, renditions.size());
+    assertEquals(1000L, renditions.get(new Object[]{"profile", "medium.jpeg", "jpeg"}).get("bytes"));
+    assertEquals(500L, renditions.get(new Object[]{"profile", "medium.jpeg", "webp"}).get("bytes"));
+  }
+
+  @Test
+  @DisplayName("Given recorded metrics, When reset, Then report nothing")
+  void testReset() throws OpenDataException {
+    metrics.record(RenditionMetrics.Stage.COMMIT, null, 1000);
+    metrics.recordSkipped(SPEC);
+
+    metrics.reset();
+
+    assertTrue(metrics.getStages().isEmpty());
+    assertTrue(metrics.getRenditions().isEmpty());
+  }
+
+  /**
+   * Percentiles are approximated by buckets at most a quarter wide.
+   */
+  private static void assertInBucket(double expectedMillis, double actualMillis) {
+    assertTrue(actualMillis >= expectedMillis && actualMillis <= expectedMillis * 1.25,
+        () -> actualMillis + " is not an approximation of " + expectedMillis);
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.mysite.local.tools.workflow.ProcessingProfile.Rendition;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class RenditionSpecTest {
+
+  @Test
+  @DisplayName("Given include and exclude mime types, When accepts, Then match only included and not excluded")
+  void testAccepts() {
+    RenditionSpec spec = compile("image/.*", "image/gif, image/svg.*");
+
+    assertTrue(spec.accepts("image/jpeg"));
+    assertTrue(spec.accepts("IMAGE/PNG"));
+    assertFalse(spec.accepts("image/gif"));
+    assertFalse(spec.accepts("image/svg+xml"));
+    assertFalse(spec.accepts("application/pdf"));
+    assertFalse(spec.accepts(null));
+  }
+
+  @Test
+  @DisplayName("Given no mime types, When accepts, Then match everything")
+  void testAcceptsWithoutMimeTypes() {
+    RenditionSpec spec = compile(null, "");
+
+    assertTrue(spec.accepts("video/mp4"));
+  }
+
+  @Test
+  @DisplayName("Given renditions differing only in name, When compile, Then share render key but not fingerprint")
+  void testRenderKey() {
+    RenditionSpec medium = compile(rendition("medium.jpeg", 85L));
+    RenditionSpec web = compile(rendition("web.jpeg", 85L));
+    RenditionSpec webLowQuality = compile(rendition("web.jpeg", 60L));
+
+    assertEquals(medium.getRenderKey(), web.getRenderKey());
+    assertNotEquals(medium.getFingerprint(), web.getFingerprint());
+    assertNotEquals(web.getRenderKey(), webLowQuality.getRenderKey());
+  }
+
+  @Test
+  @DisplayName("Given renditions differing only in box, When compile, Then share full size render key only")
+  void testFullSizeRenderKey() {
+    RenditionSpec medium = compile(rendition("web.jpeg", 800L, 85L));
+    RenditionSpec large = compile(rendition("web.jpeg", 1600L, 85L));
+
+    assertNotEquals(medium.getRenderKey(), large.getRenderKey());
+    assertEquals(medium.getFullSizeRenderKey(), large.getFullSizeRenderKey());
+  }
+
+  @Test
+  @DisplayName("Given renditions with and without priority, When sorted in schedule order, Then prioritized and "
+      + "smaller first")
+  void testScheduleOrder() {
+    RenditionSpec thumbnail = compile(rendition("thumbnail.jpeg", 140L, 85L));
+    RenditionSpec large = compile(rendition("large.jpeg", 1600L, 85L));
+    RenditionSpec prioritized = compile(rendition("web.jpeg", 1280L, 85L, 10L));
+
+    assertEquals(List.of("web.jpeg", "thumbnail.jpeg", "large.jpeg"), Stream.of(large, thumbnail, prioritized)
+        .sorted(RenditionSpec.SCHEDULE_ORDER)
+        .map(RenditionSpec::getName)
+        .collect(Collectors.toList()));
+  }
+
+  @Test
+  @DisplayName("Given early size, When isEarly, Then early when small enough unless the priority decides")
+  void testIsEarly() {
+    assertTrue(compile(rendition("thumbnail.jpeg", 319L, 85L)).isEarly(319));
+    assertFalse(compile(rendition("large.jpeg", 1600L, 85L)).isEarly(319));
+    assertTrue(compile(rendition("web.jpeg", 1280L, 85L, 1L)).isEarly(319));
+    assertFalse(compile(rendition("icon.jpeg", 48L, 85L, -1L)).isEarly(319));
+  }
+
+  @Test
+  @DisplayName("Given fmt different from the name, When compile, Then encode to the fmt")
+  void testFormat() {
+    RenditionSpec png = compile(Rendition.builder().name("web.jpeg").fmt("png").wid(800L).hei(800L).qlt(85L).build());
+    RenditionSpec unknown = compile(Rendition.builder().name("web.jpeg").fmt("raw").wid(800L).hei(800L).qlt(85L)
+        .build());
+
+    assertEquals("image/png", png.getMimeType());
+    assertEquals("png", png.getInstructions().get("fmt"));
+    assertEquals("image/jpeg", unknown.getMimeType());
+    assertEquals("jpeg", unknown.getInstructions().get("fmt"));
+  }
+
+  @Test
+  @DisplayName("Given encoding options, When compile, Then map them and the quality to the format")
+  void testEncodingOptions() {
+    RenditionSpec progressive = compile(Rendition.builder().name("web.jpeg").fmt("pjpeg").wid(800L).hei(800L)
+        .qlt(85L).build());
+    RenditionSpec palette = compile(Rendition.builder().name("web.png").fmt("png").palette(true)
+        .compressionLevel(12L).wid(800L).hei(800L).qlt(50L).build());
+    RenditionSpec webp = compile(Rendition.builder().name("web.webp").fmt("webp").wid(800L).hei(800L).qlt(75L)
+        .build());
+
+    assertTrue(progressive.isProgressive());
+    assertEquals("pjpeg", progressive.getInstructions().get("fmt"));
+    assertEquals(85, progressive.getInstructions().get("qlt"));
+    assertTrue(palette.isPalette());
+    assertEquals(9, palette.getCompressionLevel());
+    assertEquals("png8", palette.getInstructions().get("fmt"));
+    assertEquals("adaptive,diffuse,128", palette.getInstructions().get("quantize"));
+    assertEquals("image/webp", webp.getMimeType());
+    assertEquals(75, webp.getInstructions().get("qlt"));
+  }
+
+  @Test
+  @DisplayName("Given lazy rendition, When compile, Then mark it lazy with the fingerprint of an eager one")
+  void testLazy() {
+    Rendition lazy = Rendition.builder()
+        .name("huge.jpeg")
+        .wid(16002L)
+        .hei(16002L)
+        .qlt(85L)
+        .lazy(true)
+        .build();
+
+    RenditionSpec spec = compile(lazy);
+
+    assertTrue(spec.isLazy());
+    assertFalse(compile(rendition("huge.jpeg", 16002L, 85L, null)).isLazy());
+    assertEquals(compile(rendition("huge.jpeg", 16002L, 85L, null)).getFingerprint(), spec.getFingerprint());
+  }
+
+  private static Rendition rendition(String name, long quality) {
+    return rendition(name, 800L, quality);
+  }
+
+  private static Rendition rendition(String name, long size, long quality) {
+    return rendition(name, size, quality, null);
+  }
+
+  private static Rendition rendition(String name, long size, long quality, Long priority) {
+    return Rendition.builder()
+        .name(name)
+        .wid(size)
+        .hei(size)
+        .qlt(quality)
+        .priority(priority)
+        .build();
+  }
+
+  private static RenditionSpec compile(Rendition rendition) {
+    return RenditionSpec.compile(ProcessingProfile.builder().name("profile").build(), rendition,
+        name -> "image/jpeg");
+  }
+
+  private static RenditionSpec compile(String includeMimeTypes, String excludeMimeTypes) {
+    Rendition rendition = Rendition.builder()
+        .name("medium.jpeg")
+        .wid(800L)
+        .hei(800L)
+        .qlt(85L)
+        .includeMimeTypes(includeMimeTypes)
+        .excludeMimeTypes(excludeMimeTypes)
+        .build();
+    return RenditionSpec.compile(ProcessingProfile.builder().name("profile").build(), rendition, name -> "image/jpeg");
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RenditionSpoolTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  @DisplayName("Given rendition within threshold, When spooled, Then keep it in memory")
+  void testSpoolInMemory() throws IOException {
+    RenditionSpool.Pool pool = new RenditionSpool.Pool(16, 1, directory);
+    byte[] rendition = bytes(16);
+
+    try (RenditionSpool spool = pool.spool(new ByteArrayInputStream(rendition))) {
+      assertTrue(spool.isInMemory());
+      assertEquals(16, spool.getLength());
+      assertArrayEquals(rendition, read(spool));
+    }
+    assertEquals(0, countFiles());
+  }
+
+  @Test
+  @DisplayName("Given rendition above threshold, When spooled, Then keep it in a file deleted on close")
+  void testSpoolToFile() throws IOException {
+    RenditionSpool.Pool pool = new RenditionSpool.Pool(16, 1, directory);
+    byte[] rendition = bytes(100);
+
+    RenditionSpool spool = pool.spool(new ByteArrayInputStream(rendition));
+
+    assertFalse(spool.isInMemory());
+    assertEquals(100, spool.getLength());
+    assertArrayEquals(rendition, read(spool));
+    assertEquals(1, countFiles());
+    spool.close();
+    assertEquals(0, countFiles());
+  }
+
+  private long countFiles() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.count();
+    }
+  }
+
+  private static byte[] read(RenditionSpool spool) throws IOException {
+    try (InputStream stream = spool.openStream()) {
+      return IOUtils.toByteArray(stream);
+    }
+  }
+
+  private static byte[] bytes(int length) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = (byte) i;
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mysite.local.tools.workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.day.cq.dam.api.Rendition;
+import com.day.crx.JcrConstants;
+import java.awt.Dimension;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class RenditionWriteBatchTest {
+
+  private ResourceResolver resourceResolver;
+
+  @BeforeEach
+  void setUp() {
+    resourceResolver = mock(ResourceResolver.class);
+    when(resourceResolver.hasChanges()).thenReturn(true);
+  }
+
+  @Test
+  @DisplayName("Given rendition with existing metadata node, When addMetadata, Then reuse the node")
+  void testAddMetadataWithExistingNode() throws RepositoryException {
+    Node metadata = mock(Node.class);
+    Node jcrContent = mock(Node.class);
+    when(jcrContent.hasNode(RenditionWriteBatch.METADATA_NODE)).thenReturn(true);
+    when(jcrContent.getNode(RenditionWriteBatch.METADATA_NODE)).thenReturn(metadata);
+    Rendition rendition = renditionWithContent(jcrContent);
+
+    new RenditionWriteBatch(resourceResolver, 1).addMetadata(rendition, new Dimension(4, 6), "fingerprint");
+
+    verify(jcrContent, never()).addNode(anyString(), anyString());
+    verify(metadata).setProperty(RenditionWriteBatch.IMAGE_WIDTH, 4);
+    verify(metadata).setProperty(RenditionWriteBatch.IMAGE_LENGTH, 6);
+    verify(metadata).setProperty(RenditionFingerprint.FINGERPRINT, "fingerprint");
+  }
+
+  @Test
+  @DisplayName("Given rendition without metadata node, When addMetadata, Then create the node")
+  void testAddMetadataWithoutNode() throws RepositoryException {
+    Node metadata = mock(Node.class);
+    Node jcrContent = mock(Node.class);
+    when(jcrContent.addNode(RenditionWriteBatch.METADATA_NODE, JcrConstants.NT_UNSTRUCTURED)).thenReturn(metadata);
+    Rendition rendition = renditionWithContent(jcrContent);
+
+    new RenditionWriteBatch(resourceResolver, 1).addMetadata(rendition, new Dimension(4, 6), null);
+
+    verify(jcrContent).addMixin(RenditionWriteBatch.METADATA_MIXIN);
+    verify(metadata).setProperty(RenditionWriteBatch.IMAGE_WIDTH, 4);
+    verify(metadata).setProperty(RenditionWriteBatch.IMAGE_LENGTH, 6);
+  }
+
+  @Test
+  @DisplayName("Given batch of two assets, When assetDone, Then commit once per two assets")
+  void testAssetDone() throws PersistenceException {
+    RenditionWriteBatch writeBatch = new RenditionWriteBatch(resourceResolver, 2);
+
+    writeBatch.assetDone();
+    verify(resourceResolver, never()).commit();
+    writeBatch.assetDone();
+    writeBatch.assetDone();
+
+    verify(resourceResolver, times(1)).commit();
+    assertEquals(1, writeBatch.getCommits());
+  }
+
+  private static Rendition renditionWithContent(Node jcrContent) throws RepositoryException {
+    Node renditionNode = mock(Node.class);
+    when(renditionNode.getNode(JcrConstants.JCR_CONTENT)).thenReturn(jcrContent);
+    Rendition rendition = mock(Rendition.class);
+    when(rendition.adaptTo(Node.class)).thenReturn(renditionNode);
+    return rendition;
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 Wunderman Thompson Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mysite.local.tools.workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(AemContextExtension.class)
+class WorkflowPayloadTest {
+
+  private static final String PACKAGE_PATH = "/var/workflow/packages/reprocess";
+
+  private final AemContext context = new AemContext();
+
+  @BeforeEach
+  void setUp() {
+    Stream.of(
+        "/content/dam/payload/b/2.png",
+        "/content/dam/payload/b/1.png",
+        "/content/dam/payload/0.png",
+        "/content/dam/other/3.png"
+    ).forEach(path -> context.create().resource(path, "jcr:primaryType", "dam:Asset"));
+    context.create().resource(PACKAGE_PATH + "/" + WorkflowPayload.PACKAGE_FILTER_PATH + "/f0",
+        WorkflowPayload.FILTER_ROOT, "/content/dam/other/3.png");
+    context.create().resource(PACKAGE_PATH + "/" + WorkflowPayload.PACKAGE_FILTER_PATH + "/f1",
+        WorkflowPayload.FILTER_ROOT, "/content/dam/payload/b");
+  }
+
+  @Test
+  @DisplayName("Given asset path, When isSingleAsset, Then return true only for one asset")
+  void testIsSingleAsset() {
+    assertTrue(payload("/content/dam/payload/0.png").isSingleAsset());
+    assertFalse(payload("/content/dam/payload").isSingleAsset());
+    assertFalse(payload("/content/dam/payload/0.png", "/content/dam/other/3.png").isSingleAsset());
+  }
+
+  @Test
+  @DisplayName("Given folder and assets, When getAssetPaths, Then stream every asset once")
+  void testGetAssetPaths() {
+    assertEquals(List.of(
+        "/content/dam/payload/b/1.png",
+        "/content/dam/payload/0.png",
+        "/content/dam/payload/b/2.png"
+    ), paths(payload("/content/dam/payload/b/1.png", "/content/dam/payload")));
+  }
+
+  @Test
+  @DisplayName("Given workflow package, When getAssetPaths, Then stream assets of its filter roots")
+  void testGetAssetPathsOfPackage() {
+    assertEquals(List.of(
+        "/content/dam/other/3.png",
+        "/content/dam/payload/b/1.png",
+        "/content/dam/payload/b/2.png"
+    ), paths(payload(PACKAGE_PATH, "/content/dam/missing.png")));
+  }
+
+  private WorkflowPayload payload(String... paths) {
+    return new WorkflowPayload(context.resourceResolver(), List.of(paths));
+  }
+
+  private static List<String> paths(WorkflowPayload payload) {
+    return payload.getAssetPaths().collect(Collectors.toList());
+  }
+}
@@ -17,6 +17,7 @@
 package com.mysite.local.tools.workflow;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.Mockito.mock;
@@ -24,9 +25,17 @@ import static org.mockito.Mockito.when;
 
 import com.adobe.granite.workflow.exec.WorkItem;
 import com.adobe.granite.workflow.exec.WorkflowData;
+import com.adobe.granite.workflow.metadata.MetaDataMap;
 import com.day.cq.dam.api.Rendition;
 import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
 import java.util.stream.Stream;
+import javax.imageio.ImageIO;
 import javax.jcr.Binary;
 import javax.jcr.RepositoryException;
 import org.apache.commons.lang3.StringUtils;
@@ -48,33 +57,64 @@ class WorkflowUtilTest {
   }
 
   @Test
-  @DisplayName("Given valid path to Asset, When getAssetPath, Then return valid asset path")
-  void testGetAssetPathWithValidPath() {
-    when(workflowData.getPayload()).thenReturn("/content/dam/someAsset.with.dots.png");
+  @DisplayName("Given list of paths, When getPayloadPaths, Then return every distinct path")
+  void testGetPayloadPaths() {
+    when(workflowData.getPayload()).thenReturn("/content/dam/a.png\n /content/dam/folder\r\n"
+        + "/content/dam/a.png/jcr:content/renditions/original\n");
 
-    String actual = WorkflowUtil.getAssetPath(workItem);
+    assertEquals(List.of("/content/dam/a.png", "/content/dam/folder"), WorkflowUtil.getPayloadPaths(workItem));
+  }
+
+  @Test
+  @DisplayName("Given path to Asset original rendition, When getPayloadPaths, Then return valid asset path")
+  void testGetPayloadPathsWithOriginalRenditionPath() {
+    when(workflowData.getPayload()).thenReturn("/content/dam/test/test2/test3/43.png/jcr:content/renditions/original");
 
-    assertEquals("/content/dam/someAsset.with.dots.png", actual);
+    assertEquals(List.of("/content/dam/test/test2/test3/43.png"), WorkflowUtil.getPayloadPaths(workItem));
   }
 
   @Test
-  @DisplayName("Given null as path to Asset, When getAssetPath, Then return empty string")
-  void testGetAssetPathWithNull() {
+  @DisplayName("Given asset name with a comma, When getPayloadPaths, Then return its whole path")
+  void testGetPayloadPathsWithComma() {
+    when(workflowData.getPayload()).thenReturn("/content/dam/summer, 2020.png");
+
+    assertEquals(List.of("/content/dam/summer, 2020.png"), WorkflowUtil.getPayloadPaths(workItem));
+  }
+
+  @Test
+  @DisplayName("Given null payload, When getPayloadPaths, Then return no paths")
+  void testGetPayloadPathsWithNull() {
     when(workflowData.getPayload()).thenReturn(null);
 
-    String actual = WorkflowUtil.getAssetPath(workItem);
+    assertTrue(WorkflowUtil.getPayloadPaths(workItem).isEmpty());
+  }
+
+  @Test
+  @DisplayName("Given no force flag, When isForced, Then return false")
+  void testIsForcedWithoutFlag() {
+    MetaDataMap stepMetaDataMap = mock(MetaDataMap.class);
+    when(stepMetaDataMap.get(WorkflowUtil.PROCESS_ARGS, StringUtils.EMPTY)).thenReturn("other");
 
-    assertEquals(StringUtils.EMPTY, actual);
+    assertFalse(WorkflowUtil.isForced(workItem, stepMetaDataMap));
   }
 
   @Test
-  @DisplayName("Given path to Asset original rendition, When getAssetPath, Then return valid asset path")
-  void testGetAssetPathWithOriginalRenditionPath() {
-    when(workflowData.getPayload()).thenReturn("/content/dam/test/test2/test3/43.png/jcr:content/renditions/original");
+  @DisplayName("Given force flag in workflow data, When isForced, Then return true")
+  void testIsForcedByWorkflowData() {
+    MetaDataMap workflowMetaDataMap = mock(MetaDataMap.class);
+    when(workflowData.getMetaDataMap()).thenReturn(workflowMetaDataMap);
+    when(workflowMetaDataMap.get(WorkflowUtil.FORCE_RENDITIONS, Boolean.FALSE)).thenReturn(true);
+
+    assertTrue(WorkflowUtil.isForced(workItem, null));
+  }
 
-    String actual = WorkflowUtil.getAssetPath(workItem);
+  @Test
+  @DisplayName("Given force process argument, When isForced, Then return true")
+  void testIsForcedByProcessArgs() {
+    MetaDataMap stepMetaDataMap = mock(MetaDataMap.class);
+    when(stepMetaDataMap.get(WorkflowUtil.PROCESS_ARGS, StringUtils.EMPTY)).thenReturn("other, force");
 
-    assertEquals("/content/dam/test/test2/test3/43.png", actual);
+    assertTrue(WorkflowUtil.isForced(workItem, stepMetaDataMap));
   }
 
   @Test
@@ -106,4 +146,27 @@ class WorkflowUtilTest {
         });
   }
 
+  @Test
+  @DisplayName("Given opaque and transparent images, When hasAlpha, Then return whether they have an alpha channel")
+  void testHasAlpha() throws IOException {
+    Rendition rendition = mock(Rendition.class);
+    ByteArrayOutputStream transparent = new ByteArrayOutputStream();
+    ImageIO.write(new BufferedImage(4, 6, BufferedImage.TYPE_INT_ARGB), "png", transparent);
+    when(rendition.getStream()).thenReturn(
+        WorkflowUtilTest.class.getResourceAsStream("/images/testImage.png"),
+        new ByteArrayInputStream(transparent.toByteArray()));
+
+    assertEquals(Optional.of(false), WorkflowUtil.hasAlpha(rendition));
+    assertEquals(Optional.of(true), WorkflowUtil.hasAlpha(rendition));
+  }
+
+  @Test
+  @DisplayName("Given unreadable image, When hasAlpha, Then return unknown")
+  void testHasAlphaWithUnreadableImage() {
+    Rendition rendition = mock(Rendition.class);
+    when(rendition.getStream()).thenReturn(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+    assertTrue(WorkflowUtil.hasAlpha(rendition).isEmpty());
+  }
+
 }